@@ -0,0 +1,86 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package Utils;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Selects the k highest counts among n with a min-heap of size k, in
+ * O(n log k) instead of sorting the n counts. Only the k selected items are
+ * sorted. Items with the same count keep their order: the first one comes
+ * first.
+ */
+public class TopK {
+
+    /**
+     * Positions of the k highest values among values[0] to values[n - 1],
+     * highest value first. The values must not be negative.
+     */
+    public static int[] select(int[] values, int n, int k) {
+        k = Math.max(0, Math.min(k, n));
+        if (k == 0) {
+            return new int[0];
+        }
+        //key of a position: its value in the high bits, then (n - 1 - position) so that a first position is a higher key.
+        //heap[0] is the smallest of the k highest keys found so far.
+        long[] heap = new long[k];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            long key = ((long) values[i] << 32) | (n - 1 - i);
+            if (k == n) {
+                //all the positions are kept: no need for a heap, they are sorted below
+                heap[size++] = key;
+            } else if (size < k) {
+                heap[size] = key;
+                siftUp(heap, size++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, k);
+            }
+        }
+        Arrays.sort(heap);
+        int[] positions = new int[k];
+        for (int i = 0; i < k; i++) {
+            positions[i] = n - 1 - (int) heap[k - 1 - i];
+        }
+        return positions;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long key = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long key = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+}
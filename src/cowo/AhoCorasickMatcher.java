@@ -0,0 +1,213 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Finds all occurrences of a fixed set of terms in a line with a single left
+ * to right scan (Aho-Corasick automaton). The automaton is built once over the
+ * frequent terms, so the cost of a scan depends on the length of the line and
+ * not on the number of terms.
+ *
+ * Occurrences are counted the same way as with repeated calls to
+ * String.indexOf(term, lastIndex + 1): overlapping occurrences are all
+ * counted.
+ */
+public class AhoCorasickMatcher {
+
+    private static final int ROOT = 0;
+    private final String[] terms;
+    private int nbNodes;
+    //transitions of the trie: key = (node, char) packed in a long, value = child node
+    private long[] transitionKeys;
+    private int[] transitionValues;
+    private int nbTransitions;
+    private int[] fail;
+    //index of the term ending at this node, -1 if none
+    private int[] termAtNode;
+    //next node along the chain of fail links where a term ends, -1 if none
+    private int[] outputLink;
+
+    public AhoCorasickMatcher(String[] terms) {
+        this.terms = terms;
+        int capacity = 1;
+        for (String term : terms) {
+            capacity += term.length();
+        }
+        termAtNode = new int[capacity];
+        Arrays.fill(termAtNode, -1);
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        transitionKeys = new long[tableSize];
+        Arrays.fill(transitionKeys, -1L);
+        transitionValues = new int[tableSize];
+        nbNodes = 1;
+
+        for (int i = 0; i < terms.length; i++) {
+            int node = ROOT;
+            String term = terms[i];
+            for (int j = 0; j < term.length(); j++) {
+                int child = getTransition(node, term.charAt(j));
+                if (child == -1) {
+                    child = nbNodes++;
+                    putTransition(node, term.charAt(j), child);
+                }
+                node = child;
+            }
+            if (node != ROOT) {
+                termAtNode[node] = i;
+            }
+        }
+        buildFailLinks();
+    }
+
+    private void buildFailLinks() {
+        fail = new int[nbNodes];
+        outputLink = new int[nbNodes];
+        Arrays.fill(outputLink, -1);
+
+        //children of every node, needed for the breadth first traversal
+        int[] childCount = new int[nbNodes + 1];
+        for (int i = 0; i < transitionKeys.length; i++) {
+            if (transitionKeys[i] != -1L) {
+                childCount[(int) (transitionKeys[i] >>> 16) + 1]++;
+            }
+        }
+        for (int i = 1; i <= nbNodes; i++) {
+            childCount[i] += childCount[i - 1];
+        }
+        int[] childrenStart = Arrays.copyOf(childCount, nbNodes + 1);
+        int[] children = new int[nbTransitions];
+        char[] childChars = new char[nbTransitions];
+        for (int i = 0; i < transitionKeys.length; i++) {
+            if (transitionKeys[i] != -1L) {
+                int parent = (int) (transitionKeys[i] >>> 16);
+                int pos = childCount[parent]++;
+                children[pos] = transitionValues[i];
+                childChars[pos] = (char) (transitionKeys[i] & 0xFFFF);
+            }
+        }
+
+        int[] queue = new int[nbNodes];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = childrenStart[node]; i < childrenStart[node + 1]; i++) {
+                int child = children[i];
+                char c = childChars[i];
+                if (node == ROOT) {
+                    fail[child] = ROOT;
+                } else {
+                    int state = fail[node];
+                    int next = getTransition(state, c);
+                    while (next == -1 && state != ROOT) {
+                        state = fail[state];
+                        next = getTransition(state, c);
+                    }
+                    fail[child] = next == -1 ? ROOT : next;
+                }
+                int f = fail[child];
+                outputLink[child] = termAtNode[f] != -1 ? f : outputLink[f];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Scans the text once and adds the number of occurrences of each term to
+     * counts (indexed like the array of terms given to the constructor). The
+     * indices of the terms found are written to termsFound, each index once.
+     * Counts of the terms found must be reset by the caller before the next
+     * scan.
+     *
+     * @return the number of distinct terms found in the text
+     */
+    public int match(String text, int[] counts, int[] termsFound) {
+        int nbFound = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = getTransition(state, c);
+            while (next == -1 && state != ROOT) {
+                state = fail[state];
+                next = getTransition(state, c);
+            }
+            state = next == -1 ? ROOT : next;
+
+            int node = termAtNode[state] != -1 ? state : outputLink[state];
+            while (node != -1) {
+                int term = termAtNode[node];
+                if (counts[term]++ == 0) {
+                    termsFound[nbFound++] = term;
+                }
+                node = outputLink[node];
+            }
+        }
+        return nbFound;
+    }
+
+    /**
+     * Same scan, recording every hit in occurrences with the position of its
+     * first character.
+     */
+    public void match(String text, TermOccurrences occurrences) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = getTransition(state, c);
+            while (next == -1 && state != ROOT) {
+                state = fail[state];
+                next = getTransition(state, c);
+            }
+            state = next == -1 ? ROOT : next;
+
+            int node = termAtNode[state] != -1 ? state : outputLink[state];
+            while (node != -1) {
+                int term = termAtNode[node];
+                occurrences.addHit(term, i + 1 - terms[term].length());
+                node = outputLink[node];
+            }
+        }
+    }
+
+    public String[] getTerms() {
+        return terms;
+    }
+
+    private int getTransition(int node, char c) {
+        long key = ((long) node << 16) | c;
+        int mask = transitionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (transitionKeys[slot] != -1L) {
+            if (transitionKeys[slot] == key) {
+                return transitionValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void putTransition(int node, char c, int child) {
+        long key = ((long) node << 16) | c;
+        int mask = transitionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (transitionKeys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        transitionKeys[slot] = key;
+        transitionValues[slot] = child;
+        nbTransitions++;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Association measures of the edges, computed from counts of documents: the
+ * number of documents where the two terms of the edge co-occur (joint count),
+ * the number of documents containing each term (marginal counts) and the
+ * number of documents. The counts are kept in arrays with one slot per edge,
+ * in the order of the edges, and a measure is computed in one pass over these
+ * arrays: the weights of the same counts can be computed again with another
+ * measure without running the analysis again. The counts are kept for every
+ * analysis (Controller.associationMeasures), with the edges they belong to,
+ * so that the network files can be written again with another measure
+ * (Controller.rewriteNetworkFiles).
+ *
+ * With a the joint count, nA and nB the marginal counts and n the number of
+ * documents:
+ *
+ * - PMI (pointwise mutual information): log(a n / (nA nB))
+ *
+ * - NPMI (normalized PMI, between -1 and 1): PMI / -log(a / n)
+ *
+ * - JACCARD: a / (nA + nB - a)
+ *
+ * - COSINE: a / sqrt(nA nB)
+ *
+ * - LOG_LIKELIHOOD: the log-likelihood ratio G2 of Dunning, on the table of
+ * the documents with and without each term. G2 is made negative for the terms
+ * found together less often than by chance (a n < nA nB), so that, as with
+ * PMI, these edges have a weight below 0.
+ */
+public class AssociationMeasures {
+
+    //the joint counts, as they are
+    public static final int NONE = 0;
+    public static final int PMI = 1;
+    public static final int NPMI = 2;
+    public static final int JACCARD = 3;
+    public static final int COSINE = 4;
+    public static final int LOG_LIKELIHOOD = 5;
+    public static final String[] NAMES = {"number of co-occurrences", "PMI", "NPMI", "Jaccard index", "cosine", "log-likelihood ratio"};
+    private final PairCounts edges;
+    private final int nbEdges;
+    private final int[] jointCounts;
+    private final int[] leftCounts;
+    private final int[] rightCounts;
+    private final int nbDocs;
+
+    /**
+     * @param edges the edges, with their weights of the analysis
+     * @param jointCounts number of documents where the two terms of each edge
+     * co-occur, in the order of the edges
+     * @param nbDocsContainingTerm number of documents containing each term,
+     * by term id
+     */
+    public AssociationMeasures(PairCounts edges, int[] jointCounts, TermCounts nbDocsContainingTerm, int nbDocs) {
+        this.edges = edges;
+        this.jointCounts = jointCounts;
+        this.nbDocs = nbDocs;
+        nbEdges = edges.size();
+        leftCounts = new int[nbEdges];
+        rightCounts = new int[nbEdges];
+        for (int i = 0; i < nbEdges; i++) {
+            leftCounts[i] = nbDocsContainingTerm.count(edges.getLeft(i));
+            rightCounts[i] = nbDocsContainingTerm.count(edges.getRight(i));
+        }
+    }
+
+    //the edges, with the weights they had in the analysis
+    public PairCounts getEdges() {
+        return edges;
+    }
+
+    public int getNbEdges() {
+        return nbEdges;
+    }
+
+    //the weight of each edge with a measure, in the order of the edges
+    public float[] weights(int measure) {
+        float[] weights = new float[nbEdges];
+        double n = nbDocs;
+        for (int i = 0; i < nbEdges; i++) {
+            double a = jointCounts[i];
+            double nA = leftCounts[i];
+            double nB = rightCounts[i];
+            double weight;
+            switch (measure) {
+                case PMI:
+                    weight = Math.log(a * n / (nA * nB));
+                    break;
+                case NPMI:
+                    //terms found in all documents: perfect association
+                    weight = a == n ? 1 : Math.log(a * n / (nA * nB)) / -Math.log(a / n);
+                    break;
+                case JACCARD:
+                    weight = a / (nA + nB - a);
+                    break;
+                case COSINE:
+                    weight = a / Math.sqrt(nA * nB);
+                    break;
+                case LOG_LIKELIHOOD:
+                    weight = logLikelihoodRatio(a, nA - a, nB - a, n - nA - nB + a);
+                    if (a * n < nA * nB) {
+                        weight = -weight;
+                    }
+                    break;
+                default:
+                    weight = a;
+            }
+            weights[i] = (float) weight;
+        }
+        return weights;
+    }
+
+    /**
+     * G2 = 2 sum(k log(k / expected k)) on the 2 x 2 table: k11 documents
+     * with both terms, k12 with the first term only, k21 with the second term
+     * only, k22 with none.
+     */
+    private static double logLikelihoodRatio(double k11, double k12, double k21, double k22) {
+        double n = k11 + k12 + k21 + k22;
+        double g2 = xLogX(k11) + xLogX(k12) + xLogX(k21) + xLogX(k22)
+                - xLogX(k11 + k12) - xLogX(k21 + k22) - xLogX(k11 + k21) - xLogX(k12 + k22)
+                + xLogX(n);
+        //rounding errors can make a ratio of independent terms slightly negative
+        return Math.max(0, 2 * g2);
+    }
+
+    private static double xLogX(double x) {
+        return x > 0 ? x * Math.log(x) : 0;
+    }
+}
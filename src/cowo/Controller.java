@@ -42,20 +42,46 @@ public class Controller implements Runnable {
     public static LinkedHashMultimap<Integer, String> wordsPerLine = LinkedHashMultimap.create();
     public static LinkedHashMultimap<Integer, String> wordsPerLineFiltered = LinkedHashMultimap.create();
     public static Set<String> setOfWords = new HashSet();
-    public static Multiset<String> multisetNGrams = TreeMultiset.create();
+    public static TermDictionary dictionary = new TermDictionary();
+    public static TermCounts multisetNGrams = new TermCounts();
     public static Multiset<String> multisetOfWords = ConcurrentHashMultiset.create();
     public static Map<String, Integer> ngramsCountinCorpus = new HashMap();
     public static Multiset<String> future = ConcurrentHashMultiset.create();
-    Multiset<String> setCombinations = ConcurrentHashMultiset.create();
+    PairCounts setCombinations;
     public static String[] stopwords;
     public static int occurrenceThreshold = 4;
-    private static FileReader fr;
     public static int maxgram = 4;
+    //n-grams are only counted when the (n-1)-grams they contain are frequent: uses less memory on large texts
+    public static boolean prunedNGramCounting = false;
+    //n-grams are counted approximately in a fixed amount of memory (Count-Min Sketch), exactly only once frequent
+    public static boolean approximateNGramCounting = false;
+    //max overestimate of a count, as a fraction of the number of n-grams counted
+    public static double sketchEpsilon = 0.00001;
+    //probability that a count is overestimated by more than sketchEpsilon
+    public static double sketchDelta = 0.01;
+    //max number of frequent n-grams counted exactly
+    public static int sketchHeavyHitters = 1000000;
+    //counts of n-grams are written to temporary files when there are more than nGramsInMemory distinct n-grams
+    public static boolean outOfCoreNGramCounting = false;
+    public static int nGramsInMemory = 5000000;
+    //terms are the maximal repeated phrases of the text, of any length, found with a suffix array instead of the n-grams up to maxgram
+    public static boolean maximalRepeatsExtraction = false;
+    //n-grams which would be removed with the stopwords are not counted at all (same result, less memory)
+    public static boolean stopWordsDuringExtraction = false;
+    //all the words of the text are lemmatized before the n-grams are counted, not only the last word of each term
+    public static boolean lemmatizeTokens = false;
     private final static int nbStopWords = 5000;
     private final static int nbStopWordsShort = 200;
     public final static int maxAcceptedGarbage = 3;
-    //static int numberOfThreads = Runtime.getRuntime().availableProcessors();
-    static int numberOfThreads = 7;
+    //unit of text in which terms co-occur (and n-grams are counted): UnitSegmenter.LINE, SENTENCE, PARAGRAPH (lines up to a blank line) or WINDOW (tokensPerUnit tokens of a line)
+    public static int cooccurrenceUnit = UnitSegmenter.LINE;
+    public static int tokensPerUnit = 50;
+    //two terms co-occur when they start less than cooccurrenceWindow tokens apart in a line, 0 for anywhere in the line
+    public static int cooccurrenceWindow = 0;
+    //weight of the edges: AssociationMeasures.NONE (number of co-occurrences, or TD-IDF weights), PMI, NPMI, JACCARD, COSINE or LOG_LIKELIHOOD
+    public static int associationMeasure = AssociationMeasures.NONE;
+    //number of threads used to count co-occurrences
+    public static int numberOfThreads = Runtime.getRuntime().availableProcessors();
     private static Integer counterLines = 0;
     // logic of freqThreshold: the higher the number of stopwords filtered out, the lower the number of significant words which should be expected
     private static int freqThreshold = 400;
@@ -81,8 +107,21 @@ public class Controller implements Runnable {
     public static Set<String> setStopWordsScientificOrShort = new HashSet();
     public static Set<String> setNoLemma = new HashSet();
     public static int minWordLength = 3;
+    //lines of the text, only used with the entities found by Alchemy API: otherwise lines go to the tokenStore
     public static Map<Integer, String> mapofLines = new HashMap();
-    public static Set<String> setFreqWords = new HashSet();
+    public static TokenStore tokenStore;
+    //number of token ids the tokenStore keeps in memory before writing them to a temporary file
+    public static int tokenStoreMemory = 16 * 1024 * 1024;
+    //bytes of the text file read at the same time by all the threads, whatever their number
+    public static int lineReaderMemory = 16 * 1024 * 1024;
+    //the frequent terms found in each line (and their counts), built with the co-occurrences
+    public static DocumentTermMatrix documentTermMatrix;
+    //counts of the edges of the last analysis: the weights of another measure can be computed from them (see rewriteNetworkFiles)
+    public static AssociationMeasures associationMeasures;
+    //name of the text file without its extension, start of the names of the output files
+    private static String outputName;
+    //number of nodes of the network files
+    private static int nbNodes;
     private static String fileMapName;
     private static BufferedWriter fileMapFile;
     private static String fileNetworkName;
@@ -109,7 +148,6 @@ public class Controller implements Runnable {
     public static boolean filterDifficultChars = true;
     static public boolean useScientificStopWords = false;
     public static boolean useTDIDF = false;
-    private Iterator<String> multisetNGramsIterator;
     private int absoluteNBTerms;
     //
     //
@@ -163,6 +201,11 @@ public class Controller implements Runnable {
     public void run() {
         try {
             wkOutput = wk.concat("\\");
+            dictionary = new TermDictionary();
+            tokenStore = new TokenStore(dictionary, tokenStoreMemory);
+            if (lemmatizeTokens) {
+                tokenStore.setLemmatizer(new Lemmatizer(dictionary));
+            }
 
 
             System.out.println("---------------------------------");
@@ -266,53 +309,56 @@ public class Controller implements Runnable {
             }
             Clock loadingTime = new Clock("Loading text file: " + textFile + msgAlchemy);
 
-            fr = new FileReader(textFile);
-            BufferedReader br = new BufferedReader(fr);
+            //the file is read in parallel by chunks, and its non blank lines are handed back in order
+            ParallelLineReader lineReader = new ParallelLineReader(new File(textFile), numberOfThreads, lineReaderMemory);
+            List<String> batchOfLines;
+            //the lines are cut in units (sentences...) as they are read, and the units go to the tokenStore
+            UnitSegmenter segmenter = new UnitSegmenter(tokenStore, cooccurrenceUnit, tokensPerUnit);
+            lineReader.setKeepBlankLines(cooccurrenceUnit == UnitSegmenter.PARAGRAPH && !useAAPI_Entity);
 
 //            LineNumberReader lnr = new LineNumberReader(new FileReader(new File(textFile)));
 //            lnr.skip(Long.MAX_VALUE);
 
 
-            if (useAAPI_Entity) {//these 5 lines are specfic to the AlchemyAPI option
-                executor = Executors.newFixedThreadPool(60);
-                listFutures = new HashMap();
-                // this line takes the fields selected by the user in the GUI and puts then in a set.
-                setFilteredFields.addAll(Arrays.asList((String[]) Screen1.screen3.listFields.getSelectedValues()));
-                System.out.println("List of fields selected:\n" + setFilteredFields.toString());
-            }
-
-            while ((currLine = br.readLine()) != null) {
-                if (!currLine.matches(".*\\w.*")) {
-                    continue;
+            //the pool of the reader and the file are released even if reading fails
+            try {
+                if (useAAPI_Entity) {//these 5 lines are specfic to the AlchemyAPI option
+                    executor = Executors.newFixedThreadPool(60);
+                    listFutures = new HashMap();
+                    // this line takes the fields selected by the user in the GUI and puts then in a set.
+                    setFilteredFields.addAll(Arrays.asList((String[]) Screen1.screen3.listFields.getSelectedValues()));
+                    System.out.println("List of fields selected:\n" + setFilteredFields.toString());
                 }
 
-                counterLines++;
+                while ((batchOfLines = lineReader.nextBatch()) != null) {
+                    for (String lineOfText : batchOfLines) {
+                        currLine = lineOfText;
+                        counterLines++;
 
 
-                if (useAAPI_Entity) {
+                        if (useAAPI_Entity) {
 
-                    AlchemyExtractor callable = new AlchemyExtractor(currLine);
-                    Future<String> futureString = executor.submit(callable);
-                    listFutures.put(counterLines, futureString);
-                    //currLine = new AlchemyExtractor(currLine).call();
+                            AlchemyExtractor callable = new AlchemyExtractor(currLine);
+                            Future<String> futureString = executor.submit(callable);
+                            listFutures.put(counterLines, futureString);
+                            //currLine = new AlchemyExtractor(currLine).call();
 
 
-                } else {
-                    currLine = TextCleaner.doBasicCleaning(currLine);
-                    mapofLines.put(counterLines, currLine);
+                        } else {
+                            segmenter.addLine(currLine);
 //                    if (currLine.contains("working memory")) {
 //                        System.out.println("first alert!");
 //                    }
 
-                } //end else condition
+                        } //end else condition
 
-
-
-
-            } // end looping through all lines of the original text file
-            counterLines = 0;
-            fr.close();
-            br.close();
+                    }
+                } // end looping through all lines of the original text file
+                counterLines = 0;
+                segmenter.close();
+            } finally {
+                lineReader.close();
+            }
             loadingTime.closeAndPrintClock();
             //### END of file reading---------------------------------------------------------
             if (useAAPI_Entity) {
@@ -349,7 +395,7 @@ public class Controller implements Runnable {
             }
 
 
-            numberOfDocs = mapofLines.keySet().size();
+            numberOfDocs = useAAPI_Entity ? mapofLines.keySet().size() : tokenStore.getNbLines();
 
             System.out.println("nb of docs treated: " + numberOfDocs);
 
@@ -357,35 +403,48 @@ public class Controller implements Runnable {
 
 
 
+            NGramFinder nGramFinder = new NGramFinder(dictionary, maxgram);
+            //the filter is only applied when the n-grams are counted one by one: not by the maximal repeats nor by the pruned counting
+            boolean stopWordsFilterUsed = stopWordsDuringExtraction && !useAAPI_Entity && !maximalRepeatsExtraction
+                    && (approximateNGramCounting || outOfCoreNGramCounting || !prunedNGramCounting);
+            if (stopWordsFilterUsed) {
+                nGramFinder.setStopWordsFilter(new StopWordsFilter(dictionary));
+            }
             if (!useAAPI_Entity) {
 
                 // ### EXTRACTING set of NGrams
-                multisetNGrams = NGramFinder.runIt(mapofLines);
-//                if (multisetNGrams.contains("working memory")) {
-//                    System.out.println("working memory present!");
-//                    System.out.println("number is: " + multisetNGrams.count("working memory"));
-//                }
-                multisetNGrams = NGramCleaner.cleanIt(multisetNGrams);
+                if (maximalRepeatsExtraction) {
+                    multisetNGrams = new MaximalRepeatsFinder(dictionary).runIt(tokenStore, occurrenceThreshold);
+                } else if (approximateNGramCounting) {
+                    multisetNGrams = nGramFinder.runItApproximate(tokenStore, occurrenceThreshold, new CountMinSketch(sketchEpsilon, sketchDelta), sketchHeavyHitters);
+                } else if (outOfCoreNGramCounting) {
+                    multisetNGrams = nGramFinder.runItOutOfCore(tokenStore, occurrenceThreshold, nGramsInMemory);
+                } else if (prunedNGramCounting) {
+                    multisetNGrams = nGramFinder.runItPruned(tokenStore, occurrenceThreshold);
+                } else {
+                    multisetNGrams = nGramFinder.runIt(tokenStore, numberOfThreads);
+                }
+                multisetNGrams = NGramCleaner.cleanIt(multisetNGrams, dictionary);
 
                 // ### LEMMATIZING
                 Clock LemmatizerClock = new Clock("Lemmatizing");
-                multisetNGrams = Lemmatizer.doLemmatizationReturnMultiSet(multisetNGrams);
-                LemmatizerClock.addText("number of words after lemmatization: " + multisetNGrams.elementSet().size());
+                multisetNGrams = Lemmatizer.doLemmatization(multisetNGrams, dictionary);
+                LemmatizerClock.addText("number of words after lemmatization: " + multisetNGrams.size());
                 //registering this number: it corresponds to the number of terms found before filtering out
-                absoluteNBTerms = multisetNGrams.elementSet().size();
+                absoluteNBTerms = multisetNGrams.size();
                 LemmatizerClock.closeAndPrintClock();
 
 
                 // ### REMOVAL SMALL WORDS
-
                 Clock removalSmallWords = new Clock("removing words shorter than " + minWordLength + " characters");
-                multisetNGramsIterator = multisetNGrams.iterator();
-                while (multisetNGramsIterator.hasNext()) {
-                    if (multisetNGramsIterator.next().length() < minWordLength) {
-                        multisetNGramsIterator.remove();
+                TermCounts tempMultiset = new TermCounts(multisetNGrams.size());
+                for (int i = 0; i < multisetNGrams.size(); i++) {
+                    if (dictionary.charLength(multisetNGrams.getTerm(i)) >= minWordLength) {
+                        tempMultiset.add(multisetNGrams.getTerm(i), multisetNGrams.getCount(i));
                     }
                 }
-                removalSmallWords.addText("number of words after the removal of short words: " + multisetNGrams.elementSet().size());
+                multisetNGrams = tempMultiset;
+                removalSmallWords.addText("number of words after the removal of short words: " + multisetNGrams.size());
                 removalSmallWords.closeAndPrintClock();
 
 
@@ -394,30 +453,23 @@ public class Controller implements Runnable {
 
 
                 Clock stopwordsRemovalTime = new Clock("Removing stopwords");
-                Iterator<Entry<String>> it = multisetNGrams.entrySet().iterator();
-                Multiset<String> tempMultiset = HashMultiset.create();
-                StopWordsRemover swr;
-                while (it.hasNext()) {
-                    counter++;
-                    Entry<String> entry = it.next();
-                    swr = new StopWordsRemover(entry.getElement().trim(), entry.getCount());
-                    tempMultiset.addAll(swr.call());
-                }
-                multisetNGrams = tempMultiset;
+                StopWordsRemover swr = new StopWordsRemover(dictionary);
+                multisetNGrams = swr.call(multisetNGrams);
 
                 counter = 0;
                 counterLines = 0;
-                stopwordsRemovalTime.addText("number of words after the removal of stopwords: " + multisetNGrams.elementSet().size());
+                stopwordsRemovalTime.addText("number of words after the removal of stopwords: " + multisetNGrams.size());
                 stopwordsRemovalTime.closeAndPrintClock();
 
                 //-------------------------------------------------------------------------------------------------------------   
                 // #### DELETES bi-grams trigrams and above, IF they are already contained in n+1 grams
-                multisetNGrams = NGramDuplicatesCleaner.removeDuplicates(multisetNGrams);
+                multisetNGrams = NGramDuplicatesCleaner.removeDuplicates(multisetNGrams, dictionary, swr);
             } 
             //Deletes terms below the frequency threshold and in the case of a person, deletes it if there is no space in it.
             else {
 
-                Iterator<Multiset.Entry<String>> itFreqList3 = Controller.multisetNGrams.entrySet().iterator();
+                Iterator<Multiset.Entry<String>> itFreqList3 = Controller.freqSet.entrySet().iterator();
+                multisetNGrams = new TermCounts();
 
 
                 while (itFreqList3.hasNext()) {
@@ -426,11 +478,11 @@ public class Controller implements Runnable {
                     int currElementCount = currEntry.getCount();
                     if (currElementCount >= occurrenceThreshold & (!"Person".equals(Controller.overallMapTextToType.get(currElement))
                             | (Controller.overallMapTextToType.get(currElement)).equals("Person") & currElement.trim().contains(" "))) {
-                        setFreqWords.add(currElement);
+                        multisetNGrams.add(dictionary.termId(currElement), currElementCount);
                     }
 
                 }
-                System.out.println("size of setFreqWords:" + setFreqWords.size());
+                System.out.println("size of setFreqWords:" + multisetNGrams.size());
 
             }
 
@@ -438,21 +490,14 @@ public class Controller implements Runnable {
 
             // #### SORTS TERMS BY FREQUENCY, LEAVING OUT THE LESS FREQUENT ONE
             Clock filteringOutLowFrequencies = new Clock("Keeping only the  " + freqThreshold + " most frequent words in the corpus");
-            multisetNGrams = Multisets.copyHighestCountFirst(multisetNGrams);
-            multisetNGramsIterator = multisetNGrams.elementSet().iterator();
-            Multiset<String> tempMultiset = HashMultiset.create();
-            int count = 0;
-            String string;
-            while (multisetNGramsIterator.hasNext()) {
-                count++;
-                string = multisetNGramsIterator.next();
-                tempMultiset.add(string, multisetNGrams.count(string));
-                if (count == freqThreshold) {
-                    break;
-                }
+            //the most frequent terms are selected without sorting all the terms
+            int[] termsByFrequency = multisetNGrams.topTerms(freqThreshold);
+            TermCounts tempMultiset = new TermCounts(freqThreshold);
+            for (int term : termsByFrequency) {
+                tempMultiset.add(term, multisetNGrams.count(term));
             }
             multisetNGrams = tempMultiset;
-            filteringOutLowFrequencies.addText("number of words after frequency filtering: " + multisetNGrams.elementSet().size());
+            filteringOutLowFrequencies.addText("number of words after frequency filtering: " + multisetNGrams.size());
             filteringOutLowFrequencies.closeAndPrintClock();
 
 
@@ -460,12 +505,13 @@ public class Controller implements Runnable {
             //-------------------------------------------------------------------------------------------------------------           
             // #### PRINTING MOST FREQUENT TERMS         
             StringBuilder mostFrequentTerms = new StringBuilder();
+            String string;
 
-            multisetNGramsIterator = Multisets.copyHighestCountFirst(multisetNGrams).elementSet().iterator();
-            while (multisetNGramsIterator.hasNext()) {
-                string = multisetNGramsIterator.next();
-                System.out.println("most frequent words: " + string + " x " + multisetNGrams.count((string)));
-                mostFrequentTerms.append("most frequent words: ").append(string).append(" x ").append(multisetNGrams.count(string)).append("\n");
+            //termsByFrequency is already sorted, most frequent first
+            for (int term : termsByFrequency) {
+                string = dictionary.term(term);
+                System.out.println("most frequent words: " + string + " x " + multisetNGrams.count(term));
+                mostFrequentTerms.append("most frequent words: ").append(string).append(" x ").append(multisetNGrams.count(term)).append("\n");
             }
 //            for (int i = 0;
 //                    i < multisetNGrams.elementSet().size()
@@ -478,8 +524,18 @@ public class Controller implements Runnable {
             //    -------------------------------------------------------------------------------------------------------------  
             // #### 8. COUNTING CO-OCCURRENCES PER LINE
             Clock calculatingCooccurrencesTime = new Clock("Determining all word co-occurrences for each line of the text");
-            CooccurrencesCounter cooc = new CooccurrencesCounter(mapofLines, multisetNGrams);
+            CooccurrencesCounter cooc = new CooccurrencesCounter(mapofLines, tokenStore, multisetNGrams, dictionary);
             setCombinations = cooc.launch();
+            documentTermMatrix = cooc.getDocumentTermMatrix();
+            int nbDocsWithoutPairs = cooc.getNbLinesWithoutPairs();
+            calculatingCooccurrencesTime.addText("documents of less than 2 words, which make no co-occurrence: " + nbDocsWithoutPairs);
+            //weights of the edges with an association measure, in the order of the edges
+            associationMeasures = new AssociationMeasures(setCombinations, cooc.getJointCounts(), cooc.getNbDocsContainingTerms(), numberOfDocs);
+            float[] measureWeights = null;
+            if (associationMeasure != AssociationMeasures.NONE) {
+                measureWeights = associationMeasures.weights(associationMeasure);
+            }
+            tokenStore.close();
 
             //            Iterator<Multiset.Entry<String>> itSetCombinations = setCombinations.entrySet().iterator();
             //            HashMap<String,Float> combiAndWeights = new HashMap();
@@ -492,114 +548,13 @@ public class Controller implements Runnable {
             //-------------------------------------------------------------------------------------------------------------                 
             Clock printingOutputTime = new Clock("Printing Vosviewer files, GML file, report file");
             //-------------------------------------------------------------------------------------------------------------          
-            // #### 9. PRINTING VOS VIEWER OUTPUT        
-
-            HashMap<String, Integer> id = new HashMap();
-            HashSet<String> idSet = new HashSet();
-            int counterIds = 0;
-            fileMapName = StringUtils.substring(textFileName, 0, textFileName.length() - 4).concat("_VosViewer_map.txt");
-            fileMapFile = new BufferedWriter(new FileWriter(wkOutput + fileMapName));
-            StringBuilder mapSb = new StringBuilder();
-
-            mapSb.append("label,id\n");
-
-            // #### Creates the map of ids
-
-            Iterator<String> setCombinationsIterator = setCombinations.elementSet().iterator();
-            while (setCombinationsIterator.hasNext()) {
-                string = setCombinationsIterator.next();
-//                System.out.println("string: "+string);
-                String[] edge = string.split(",");
-                if (idSet.add(edge[0])) {
-                    id.put(edge[0], counterIds++);
-                    mapSb.append(edge[0]).append(", ").append(counterIds).append("\n");
-                }
-                if (idSet.add(edge[1])) {
-                    id.put(edge[1], counterIds++);
-                    mapSb.append(edge[1]).append(", ").append(counterIds).append("\n");
-                }
-
-
-            }
-
-            fileMapFile.write(mapSb.toString());
-            fileMapFile.flush();
-
-            fileMapFile.close();
-
-            // #### Creates the Vosviewer network (edges) of ids
-            fileNetworkName = StringUtils.substring(textFileName, 0, textFileName.length() - 4).concat("_VosViewer_network.txt");
-            fileNetworkFile = new BufferedWriter(new FileWriter(wkOutput + fileNetworkName));
-
-            System.out.println(wkOutput
-                    + fileNetworkName);
-            StringBuilder networkSb = new StringBuilder();
-            setCombinationsIterator = setCombinations.elementSet().iterator();
-            while (setCombinationsIterator.hasNext()) {
-                string = setCombinationsIterator.next();
-                String[] edge = string.split(",");
-                try {
-                    float edgeWeight;
-                    if (useTDIDF) {
-                        edgeWeight = (float) setCombinations.count(string) / (float) 1000;
-                    } else {
-                        edgeWeight = (float) setCombinations.count(string);
-                    }
-                    networkSb.append(id.get(edge[0]) + 1).append(",").append(id.get(edge[1]) + 1).append(",").append((Float.toString(edgeWeight))).append("\n");
-                } catch (NullPointerException e) {
-                }
-            }
-
-            fileNetworkFile.write(networkSb.toString());
-            fileNetworkFile.flush();
-
-            fileNetworkFile.close();
-            //-------------------------------------------------------------------------------------------------------------     
-            // #### 10. PRINTING GML output        
-            HashMap<String, Integer> idGML = new HashMap();
-            HashSet<String> idSetGML = new HashSet();
-            counterIds = 0;
-            fileGMLName = StringUtils.substring(textFileName, 0, textFileName.length() - 4).concat(".gml");
-            fileGMLFile = new BufferedWriter(new FileWriter(wkOutput + fileGMLName));
-            StringBuilder GMLSb = new StringBuilder();
-
-            GMLSb.append(
-                    "graph [\n");
-
-            // #### Creates the nodes
-            setCombinationsIterator = setCombinations.elementSet().iterator();
-            while (setCombinationsIterator.hasNext()) {
-                string = setCombinationsIterator.next();
-                String[] edge = string.split(",");
-                if (idSetGML.add(edge[0])) {
-                    idGML.put(edge[0], counterIds++);
-                    GMLSb.append("node\n[\nid ").append(counterIds).append("\nlabel \"").append(edge[0]).append("\"\n]\n");
-                }
-                if (idSetGML.add(edge[1])) {
-                    idGML.put(edge[1], counterIds++);
-                    GMLSb.append("node\n[\nid ").append(counterIds).append("\nlabel \"").append(edge[1]).append("\"\n]\n");
-                }
-
-
-            }
-            setCombinationsIterator = setCombinations.elementSet().iterator();
-            while (setCombinationsIterator.hasNext()) {
-
-                string = setCombinationsIterator.next();
-                String[] edge = string.split(",");
-                try {
-                    GMLSb.append("edge\n[\nsource ").append(id.get(edge[0]) + 1).append("\ntarget ").append(id.get(edge[1]) + 1).append("\nvalue ").append(setCombinations.count(string)).append("\n]\n");
-                } catch (NullPointerException e) {
-                }
-            }
+            // #### 9. AND 10. PRINTING VOS VIEWER AND GML OUTPUT        
 
-            fileGMLFile.write(GMLSb.toString());
-            fileGMLFile.flush();
-
-            fileGMLFile.close();
+            outputName = StringUtils.substring(textFileName, 0, textFileName.length() - 4);
+            int nbEdges = writeNetworkFiles(setCombinations, measureWeights);
             //-------------------------------------------------------------------------------------------------------------          
             // #### 11. PRINTING REPORT ON PARAMETERS EMPLOYED:
-            fileParametersName = StringUtils.substring(textFileName, 0, textFileName.length() - 4).concat("_parameters.txt");
+            fileParametersName = outputName.concat("_parameters.txt");
             fileParametersFile = new BufferedWriter(new FileWriter(wkOutput + fileParametersName));
             StringBuilder parametersSb = new StringBuilder();
 
@@ -610,14 +565,43 @@ public class Controller implements Runnable {
                         "AlchemyAPI is used to detected entities in the corpus.\nType and numbers of entities extracted:\n").append(
                         AlchemyAPIfieldsAndNumbers.toString()).append("\n");
             }
+            parametersSb.append(nGramFinder.getApproximationReport());
             parametersSb.append(
                     "TD-IDF measure used to correct the frequency of terms per docs: ").append(useTDIDF).append(".\n");
             parametersSb.append(
                     "Number of documents in the corpus: ").append(numberOfDocs).append(".\n");
-            parametersSb.append(
-                    "Inclusion of n-grams up to (and including) ").append(maxgram).append("-grams.\n");
+            if (maximalRepeatsExtraction && !useAAPI_Entity) {
+                parametersSb.append(
+                        "Terms are the maximal repeated phrases of the corpus, with no limit on their number of words.\n");
+            } else {
+                parametersSb.append(
+                        "Inclusion of n-grams up to (and including) ").append(maxgram).append("-grams.\n");
+            }
             parametersSb.append(
                     "Binary or full counting of co-occurrences per document? Binary = ").append(binary).append("\n");
+            if (stopWordsDuringExtraction && !useAAPI_Entity && !stopWordsFilterUsed) {
+                parametersSb.append(
+                        "Stopwords could not be applied while extracting the terms with this way of counting them: they were removed afterwards (same result).\n");
+            }
+            if (cooccurrenceUnit != UnitSegmenter.LINE && !useAAPI_Entity) {
+                String[] units = {"line", "sentence", "paragraph", "window of " + tokensPerUnit + " words"};
+                parametersSb.append(
+                        "Unit of text in which terms co-occur (a document): ").append(units[cooccurrenceUnit]).append(".\n");
+            }
+            if (nbDocsWithoutPairs > 0) {
+                parametersSb.append(
+                        "Documents of less than 2 words, which make no co-occurrence: ").append(nbDocsWithoutPairs).append(".\n");
+            }
+            if (associationMeasure != AssociationMeasures.NONE) {
+                parametersSb.append(
+                        "Weight of the edges: ").append(AssociationMeasures.NAMES[associationMeasure]).append(", from the numbers of documents containing the terms (the TD-IDF measure is not used).\n");
+                parametersSb.append(
+                        "Edges with a weight of 0 or less (terms found together less often than by chance), not written in the network files: ").append(setCombinations.size() - nbEdges).append(".\n");
+            }
+            if (cooccurrenceWindow > 0 && !useAAPI_Entity) {
+                parametersSb.append(
+                        "Terms co-occur when they are less than ").append(cooccurrenceWindow).append(" words apart in a document.\n");
+            }
             parametersSb.append(
                     "Size of the list of most frequent stopwords removed: ").append(nbStopWords).append(".\n");
             parametersSb.append(
@@ -632,9 +616,9 @@ public class Controller implements Runnable {
             parametersSb.append(
                     "number of words found including n-grams: ").append(absoluteNBTerms).append(".\n");
             parametersSb.append(
-                    "number of nodes: ").append(counterIds).append(".\n");
+                    "number of nodes: ").append(nbNodes).append(".\n");
             parametersSb.append(
-                    "number of edges: ").append(setCombinations.size()).append(".\n\n\n");
+                    "number of edges: ").append(nbEdges).append(".\n\n\n");
             parametersSb.append(
                     mostFrequentTerms.toString());
 
@@ -675,6 +659,127 @@ public class Controller implements Runnable {
             Exceptions.printStackTrace(ex);
         } catch (IOException ex) {
             Exceptions.printStackTrace(ex);
+        } finally {
+            //the temporary file of the tokens is deleted even when the analysis fails
+            if (tokenStore != null) {
+                try {
+                    tokenStore.close();
+                } catch (IOException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the VosViewer map and network files and the GML file of the
+     * edges. With an association measure, the edges with a weight of 0 or
+     * less (such as a negative PMI: terms found together less often than by
+     * chance) are not written, nor the nodes found only in these edges.
+     *
+     * @param measureWeights the weight of each edge with an association
+     * measure, null for the weights of the edges
+     * @return the number of edges written
+     */
+    private static int writeNetworkFiles(PairCounts edges, float[] measureWeights) throws IOException {
+        //the edges written
+        BitSet written = new BitSet(edges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            written.set(i, measureWeights == null || measureWeights[i] > 0);
         }
+        //ids of the nodes, in the order in which the terms appear in the edges
+        TermCounts id = new TermCounts();
+        nbNodes = 0;
+        fileMapName = outputName.concat("_VosViewer_map.txt");
+        fileMapFile = new BufferedWriter(new FileWriter(wkOutput + fileMapName));
+        StringBuilder mapSb = new StringBuilder();
+
+        mapSb.append("label,id\n");
+
+        // #### Creates the map of ids
+
+        for (int i = written.nextSetBit(0); i >= 0; i = written.nextSetBit(i + 1)) {
+            int left = edges.getLeft(i);
+            int right = edges.getRight(i);
+            if (!id.contains(left)) {
+                id.add(left, ++nbNodes);
+                mapSb.append(dictionary.term(left)).append(", ").append(nbNodes).append("\n");
+            }
+            if (!id.contains(right)) {
+                id.add(right, ++nbNodes);
+                mapSb.append(dictionary.term(right)).append(", ").append(nbNodes).append("\n");
+            }
+
+
+        }
+
+        fileMapFile.write(mapSb.toString());
+        fileMapFile.flush();
+
+        fileMapFile.close();
+
+        // #### Creates the Vosviewer network (edges) of ids
+        fileNetworkName = outputName.concat("_VosViewer_network.txt");
+        fileNetworkFile = new BufferedWriter(new FileWriter(wkOutput + fileNetworkName));
+
+        System.out.println(wkOutput
+                + fileNetworkName);
+        StringBuilder networkSb = new StringBuilder();
+        for (int i = written.nextSetBit(0); i >= 0; i = written.nextSetBit(i + 1)) {
+            float edgeWeight;
+            if (measureWeights != null) {
+                edgeWeight = measureWeights[i];
+            } else if (useTDIDF) {
+                edgeWeight = (float) edges.getWeight(i) / (float) 1000;
+            } else {
+                edgeWeight = (float) edges.getWeight(i);
+            }
+            networkSb.append(id.count(edges.getLeft(i))).append(",").append(id.count(edges.getRight(i))).append(",").append((Float.toString(edgeWeight))).append("\n");
+        }
+
+        fileNetworkFile.write(networkSb.toString());
+        fileNetworkFile.flush();
+
+        fileNetworkFile.close();
+        // #### Creates the GML file
+        //the nodes are numbered as in the Vosviewer map
+        fileGMLName = outputName.concat(".gml");
+        fileGMLFile = new BufferedWriter(new FileWriter(wkOutput + fileGMLName));
+        StringBuilder GMLSb = new StringBuilder();
+
+        GMLSb.append(
+                "graph [\n");
+
+        // #### Creates the nodes
+        for (int i = 0; i < id.size(); i++) {
+            GMLSb.append("node\n[\nid ").append(id.getCount(i)).append("\nlabel \"").append(dictionary.term(id.getTerm(i))).append("\"\n]\n");
+        }
+        for (int i = written.nextSetBit(0); i >= 0; i = written.nextSetBit(i + 1)) {
+            GMLSb.append("edge\n[\nsource ").append(id.count(edges.getLeft(i))).append("\ntarget ").append(id.count(edges.getRight(i))).append("\nvalue ");
+            if (measureWeights != null) {
+                GMLSb.append(measureWeights[i]);
+            } else {
+                GMLSb.append(edges.getWeight(i));
+            }
+            GMLSb.append("\n]\n");
+        }
+
+        fileGMLFile.write(GMLSb.toString());
+        fileGMLFile.flush();
+
+        fileGMLFile.close();
+        return written.cardinality();
+    }
+
+    /**
+     * Writes the network files of the last analysis again, with the edges
+     * weighted with another association measure (AssociationMeasures.NONE for
+     * the weights of the analysis). The weights are computed from the counts
+     * kept in associationMeasures: the text is not analysed again.
+     *
+     * @return the number of edges written
+     */
+    public static int rewriteNetworkFiles(int measure) throws IOException {
+        return writeNetworkFiles(associationMeasures.getEdges(), measure == AssociationMeasures.NONE ? null : associationMeasures.weights(measure));
     }
 }
@@ -0,0 +1,254 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * The co-occurrences of the terms of a DocumentTermMatrix X, computed as the
+ * sparse product X^T X: row a of the product is the sum of the documents
+ * containing a (the column of a in X). The product is computed in blocks of
+ * rows of about the same work, in parallel. Each block adds up its rows in
+ * dense arrays of one slot per term, which are small enough to stay in cache
+ * while the block is processed: no hash table is probed per pair of terms in
+ * a document, and the cost is the number of pairs of non-zero entries of the
+ * documents, whatever the number of terms and documents.
+ *
+ * The weight a document gives to a pair is the same as when the pairs of each
+ * line were counted one by one: 1 + 1 (binary counting), or the TF-IDF weights
+ * of the two terms in the document, added up and multiplied by 10000. The
+ * edges come out in the same order too, the order in which they first appear
+ * in the documents: each pair keeps its first two entries, and the pairs are
+ * sorted on them at the end.
+ *
+ * The number of documents where the two terms of each edge co-occur is
+ * counted along with the weights (getJointCounts), whatever the weights.
+ */
+public class CooccurrenceProduct {
+
+    private final DocumentTermMatrix documents;
+    //pairs of terms (as columns) which don't make an edge
+    private final PairCounts excludedPairs;
+    private final boolean useTfIdf;
+    private int[] jointCounts;
+
+    /**
+     * @param documents its columns must be indexed, and its TF-IDF weights
+     * computed if useTfIdf
+     */
+    public CooccurrenceProduct(DocumentTermMatrix documents, PairCounts excludedPairs, boolean useTfIdf) {
+        this.documents = documents;
+        this.excludedPairs = excludedPairs;
+        this.useTfIdf = useTfIdf;
+    }
+
+    /**
+     * The edges between the term ids of the columns, in nbBlocks tasks run by
+     * the pool.
+     */
+    public PairCounts compute(ExecutorService pool, int nbBlocks) throws InterruptedException {
+        int nbTerms = documents.getNbTerms();
+        //work of each row: the entries of all the documents containing its term
+        long[] work = new long[nbTerms];
+        long totalWork = 0;
+        for (int doc = 0; doc < documents.getNbDocs(); doc++) {
+            int nbEntries = documents.getEnd(doc) - documents.getStart(doc);
+            for (int e = documents.getStart(doc); e < documents.getEnd(doc); e++) {
+                work[documents.getTerm(e)] += nbEntries;
+            }
+            totalWork += (long) nbEntries * nbEntries;
+        }
+
+        List<Future<RowsBlock>> blocks = new ArrayList();
+        long workPerBlock = Math.max(1, (totalWork + nbBlocks - 1) / nbBlocks);
+        int from = 0;
+        long blockWork = 0;
+        for (int a = 0; a < nbTerms; a++) {
+            blockWork += work[a];
+            if (blockWork >= workPerBlock || a == nbTerms - 1) {
+                blocks.add(pool.submit(new RowsBlock(from, a + 1)));
+                from = a + 1;
+                blockWork = 0;
+            }
+        }
+
+        try {
+            List<RowsBlock> results = new ArrayList();
+            int nbPairs = 0;
+            for (Future<RowsBlock> future : blocks) {
+                RowsBlock block = future.get();
+                results.add(block);
+                nbPairs += block.nbPairs;
+            }
+            return inOrderOfFirstEntries(results, nbPairs);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    //number of documents where the terms of each edge co-occur, in the order of the edges of compute()
+    public int[] getJointCounts() {
+        return jointCounts;
+    }
+
+    /**
+     * Puts the pairs of all blocks in a PairCounts, in the order of their
+     * first entries: the pair first found in the entries i and j of a
+     * document comes before the pairs first found in (i, k > j) and in
+     * (k > i, ...). Entries are numbered in the order of the documents, so
+     * that this is a radix sort on j then on i.
+     */
+    private PairCounts inOrderOfFirstEntries(List<RowsBlock> blocks, int nbPairs) {
+        int[] termsA = new int[nbPairs];
+        int[] termsB = new int[nbPairs];
+        int[] weights = new int[nbPairs];
+        int[] counts = new int[nbPairs];
+        int[] firstEntriesI = new int[nbPairs];
+        int[] firstEntriesJ = new int[nbPairs];
+        int position = 0;
+        for (RowsBlock block : blocks) {
+            System.arraycopy(block.termsA, 0, termsA, position, block.nbPairs);
+            System.arraycopy(block.termsB, 0, termsB, position, block.nbPairs);
+            System.arraycopy(block.weights, 0, weights, position, block.nbPairs);
+            System.arraycopy(block.counts, 0, counts, position, block.nbPairs);
+            System.arraycopy(block.firstEntriesI, 0, firstEntriesI, position, block.nbPairs);
+            System.arraycopy(block.firstEntriesJ, 0, firstEntriesJ, position, block.nbPairs);
+            position += block.nbPairs;
+        }
+        int[] order = new int[nbPairs];
+        for (int i = 0; i < nbPairs; i++) {
+            order[i] = i;
+        }
+        int nbEntries = documents.getNbEntries();
+        order = countingSort(order, firstEntriesJ, nbEntries);
+        order = countingSort(order, firstEntriesI, nbEntries);
+
+        PairCounts pairs = new PairCounts(nbPairs);
+        jointCounts = new int[nbPairs];
+        for (int pair : order) {
+            jointCounts[pairs.size()] = counts[pair];
+            pairs.add(documents.getTermId(termsA[pair]), documents.getTermId(termsB[pair]), weights[pair]);
+        }
+        return pairs;
+    }
+
+    //stable sort of order on keys[order[...]], with keys in [0, maxKey)
+    private static int[] countingSort(int[] order, int[] keys, int maxKey) {
+        int[] starts = new int[maxKey + 1];
+        for (int position : order) {
+            starts[keys[position] + 1]++;
+        }
+        for (int k = 0; k < maxKey; k++) {
+            starts[k + 1] += starts[k];
+        }
+        int[] sorted = new int[order.length];
+        for (int position : order) {
+            sorted[starts[keys[position]]++] = position;
+        }
+        return sorted;
+    }
+
+    /**
+     * The rows fromTerm to toTerm - 1 of the product, upper triangle only:
+     * the pairs (a, b) with b > a.
+     */
+    private class RowsBlock implements Callable<RowsBlock> {
+
+        private final int fromTerm;
+        private final int toTerm;
+        int nbPairs;
+        int[] termsA = new int[64];
+        int[] termsB = new int[64];
+        int[] weights = new int[64];
+        int[] counts = new int[64];
+        int[] firstEntriesI = new int[64];
+        int[] firstEntriesJ = new int[64];
+
+        RowsBlock(int fromTerm, int toTerm) {
+            this.fromTerm = fromTerm;
+            this.toTerm = toTerm;
+        }
+
+        @Override
+        public RowsBlock call() {
+            int nbTerms = documents.getNbTerms();
+            //the row being added up: weight, number of documents and first pair of entries of each term b, rowOf[b] == a when b was found in row a
+            int[] rowWeights = new int[nbTerms];
+            int[] rowCounts = new int[nbTerms];
+            int[] rowFirstEntriesI = new int[nbTerms];
+            int[] rowFirstEntriesJ = new int[nbTerms];
+            int[] rowOf = new int[nbTerms];
+            Arrays.fill(rowOf, -1);
+            int[] termsOfRow = new int[nbTerms];
+
+            for (int a = fromTerm; a < toTerm; a++) {
+                int nbTermsOfRow = 0;
+                for (int k = documents.getColumnStart(a); k < documents.getColumnEnd(a); k++) {
+                    int entryA = documents.getColumnEntry(k);
+                    int doc = documents.getColumnDoc(k);
+                    float weightA = useTfIdf ? documents.getWeight(entryA) : 0;
+                    for (int entryB = documents.getStart(doc); entryB < documents.getEnd(doc); entryB++) {
+                        int b = documents.getTerm(entryB);
+                        if (b <= a) {
+                            continue;
+                        }
+                        int weight;
+                        if (useTfIdf) {
+                            weight = Math.round(10000 * (float) (weightA + documents.getWeight(entryB)));
+                        } else {
+                            //binary counting: each term counts once in the line
+                            weight = 1 + 1;
+                        }
+                        if (rowOf[b] == a) {
+                            rowWeights[b] += weight;
+                            rowCounts[b]++;
+                        } else {
+                            rowOf[b] = a;
+                            rowWeights[b] = weight;
+                            rowCounts[b] = 1;
+                            rowFirstEntriesI[b] = Math.min(entryA, entryB);
+                            rowFirstEntriesJ[b] = Math.max(entryA, entryB);
+                            termsOfRow[nbTermsOfRow++] = b;
+                        }
+                    }
+                }
+                for (int i = 0; i < nbTermsOfRow; i++) {
+                    int b = termsOfRow[i];
+                    if (!excludedPairs.contains(a, b)) {
+                        addPair(a, b, rowWeights[b], rowCounts[b], rowFirstEntriesI[b], rowFirstEntriesJ[b]);
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void addPair(int a, int b, int weight, int count, int firstEntryI, int firstEntryJ) {
+            if (nbPairs == termsA.length) {
+                termsA = Arrays.copyOf(termsA, nbPairs * 2);
+                termsB = Arrays.copyOf(termsB, nbPairs * 2);
+                weights = Arrays.copyOf(weights, nbPairs * 2);
+                counts = Arrays.copyOf(counts, nbPairs * 2);
+                firstEntriesI = Arrays.copyOf(firstEntriesI, nbPairs * 2);
+                firstEntriesJ = Arrays.copyOf(firstEntriesJ, nbPairs * 2);
+            }
+            termsA[nbPairs] = a;
+            termsB[nbPairs] = b;
+            weights[nbPairs] = weight;
+            counts[nbPairs] = count;
+            firstEntriesI[nbPairs] = firstEntryI;
+            firstEntriesJ[nbPairs] = firstEntryJ;
+            nbPairs++;
+        }
+    }
+}
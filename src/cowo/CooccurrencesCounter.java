@@ -4,170 +4,459 @@
  */
 package cowo;
 
-import com.google.common.collect.ConcurrentHashMultiset;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author C. Levallois
+ *
+ * The lines are read from the TokenStore (or from the map of lines for the
+ * entities found by Alchemy API), and split in chunks which are processed in
+ * parallel by
+ * Controller.numberOfThreads workers. Each worker counts in its own
+ * structures, which are merged at the end in the order of the chunks: the
+ * result is the same as with a single thread.
+ *
+ * The frequent terms found in the lines make a DocumentTermMatrix, built once
+ * and kept (getDocumentTermMatrix). The co-occurrences are then computed on
+ * this matrix, as the product X^T X (see CooccurrenceProduct).
+ *
+ * With a co-occurrence window (Controller.cooccurrenceWindow), two terms of a
+ * line only co-occur when they start less than the window apart. The hits of
+ * the terms come in the order of their positions: the hits within the window
+ * of a hit are those since the first one still in the window, which moves
+ * forward with the hits (a sliding window), so that a line costs its number
+ * of hits times the window instead of its number of terms squared. The pairs
+ * found in each line are kept as pairs of entries of the matrix, each pair
+ * once per line, and weighted like the pairs of a whole line once the TF-IDF
+ * weights are known. The window only applies to lines of tokens, not to the
+ * entities found by Alchemy API.
  */
 public class CooccurrencesCounter {
 
+    //number of chunks per thread, so that a slow chunk doesn't leave the other threads idle
+    private static final int CHUNKS_PER_THREAD = 4;
+    //max number of lines of a chunk read from the TokenStore, so that chunks waiting for a thread don't fill the memory
+    private static final int MAX_LINES_PER_CHUNK = 8192;
     Map<Integer, String> mapofLines;
-    Multiset<String> setFreqWords;
-    Multiset<String> ngramsInLine = ConcurrentHashMultiset.create();
-    Multiset<String> multisetOcc = ConcurrentHashMultiset.create();
-    Multiset<String> setCombinations = ConcurrentHashMultiset.create();
-    HashMultiset<String> countTermsInDocs = HashMultiset.create();
-
-    public CooccurrencesCounter(Map<Integer, String> mapOfLines, Multiset<String> multisetNGrams) {
+    TokenStore tokenStore;
+    TermCounts setFreqWords;
+    TermDictionary dictionary;
+    int[] freqTerms;
+    int[] countTermsInDocs;
+    //the frequent terms found in each line, by chunk of lines
+    List<DocumentTermMatrix> documents;
+    //the same, for all the lines
+    DocumentTermMatrix documentTermMatrix;
+    //number of lines where the terms of each edge co-occur, in the order of the edges
+    int[] jointCounts;
+    //with a co-occurrence window: the pairs of entries of each chunk of lines (see LinesMatcher.windowPairs)
+    List<long[]> windowPairs;
+    //pairs of terms where one term is part of the other: they don't make an edge
+    PairCounts nestedTerms;
+    //lines of less than 2 tokens: they make no pair
+    int nbLinesWithoutPairs;
+    AhoCorasickMatcher entitiesMatcher;
+
+    /**
+     * @param mapOfLines the lines, only used with the entities found by
+     * Alchemy API
+     * @param tokenStore the lines, in all other cases
+     */
+    public CooccurrencesCounter(Map<Integer, String> mapOfLines, TokenStore tokenStore, TermCounts multisetNGrams, TermDictionary dictionary) {
         this.mapofLines = mapOfLines;
+        this.tokenStore = tokenStore;
         this.setFreqWords = multisetNGrams;
+        this.dictionary = dictionary;
     }
 
-    public Multiset<String> launch() throws InterruptedException, IOException {
-
-        //COUNTING IN HOW MANY DOCS EACH FREQUENT TERM OCCURS (FOR THE TD IDF MEASURE)
-        Iterator<String> itIDF = setFreqWords.elementSet().iterator();
+    public PairCounts launch() throws InterruptedException, IOException {
 
-        while (itIDF.hasNext()) {
-            String freqWordTerm = itIDF.next();
-            Iterator<String> itLines = mapofLines.values().iterator();
-            while (itLines.hasNext()) {
-                if (itLines.next().contains(freqWordTerm)) {
-                    countTermsInDocs.add(freqWordTerm);
-                }
+        freqTerms = new int[setFreqWords.size()];
+        for (int i = 0; i < freqTerms.length; i++) {
+            freqTerms[i] = setFreqWords.getTerm(i);
+        }
 
+        //entities found by Alchemy API are separated by "|" and can contain any character: they are searched as strings.
+        //otherwise terms are searched on the tokens of the line, so that "car" is not found in "scar".
+        if (Controller.useAAPI_Entity) {
+            String[] freqTermsAsStrings = new String[freqTerms.length];
+            for (int i = 0; i < freqTerms.length; i++) {
+                freqTermsAsStrings[i] = dictionary.term(freqTerms[i]);
             }
-
+            entitiesMatcher = new AhoCorasickMatcher(freqTermsAsStrings);
         }
-
-        for (Integer lineNumber : mapofLines.keySet()) {
-
-            HashMap<String, Float> tdIDFScores = new HashMap();
-            String currWords = mapofLines.get(lineNumber);
-//                System.out.println("in the loop: " + currWords);
-            int countTermsInThisDoc;
+        nestedTerms = findNestedTerms(freqTerms);
+
+        int nbThreads = Math.max(1, Controller.numberOfThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            //FINDING THE FREQUENT TERMS OF EACH LINE
+            //the number of docs containing each term is only known once all lines have been scanned
+            countTermsInDocs = new int[freqTerms.length];
+            nbLinesWithoutPairs = 0;
+            documents = new ArrayList();
+            windowPairs = new ArrayList();
+            //the results are merged in the order of the chunks. At most 2 chunks per thread are waiting or running.
+            ArrayDeque<Future<LinesMatcher>> matchers = new ArrayDeque();
             if (Controller.useAAPI_Entity) {
-                countTermsInThisDoc = currWords.split("\\|").length;
+                for (List<String> chunk : chunks(new ArrayList<String>(mapofLines.values()), nbThreads * CHUNKS_PER_THREAD)) {
+                    matchers.add(pool.submit(new LinesMatcher(chunk)));
+                }
             } else {
-                countTermsInThisDoc = currWords.split(Controller.wordSeparator).length;
-//                    System.out.println("nb terms in this doc: " + countTermsInThisDoc);
+                int linesPerChunk = (tokenStore.getNbLines() + nbThreads * CHUNKS_PER_THREAD - 1) / (nbThreads * CHUNKS_PER_THREAD);
+                linesPerChunk = Math.max(1, Math.min(MAX_LINES_PER_CHUNK, linesPerChunk));
+                TokenStore.Reader reader = tokenStore.reader();
+                int[] chunk;
+                while ((chunk = reader.nextLines(linesPerChunk)) != null) {
+                    if (matchers.size() >= nbThreads * 2) {
+                        addMatches(matchers.poll().get());
+                    }
+                    matchers.add(pool.submit(new LinesMatcher(chunk)));
+                }
+            }
+            while (!matchers.isEmpty()) {
+                addMatches(matchers.poll().get());
             }
 
+            documentTermMatrix = new DocumentTermMatrix(freqTerms);
+            int[] chunkStarts = new int[documents.size()];
+            for (int i = 0; i < documents.size(); i++) {
+                chunkStarts[i] = documentTermMatrix.getNbEntries();
+                documentTermMatrix.addAll(documents.get(i));
+            }
+            documents = null;
+            documentTermMatrix.indexColumns();
+            //the TF-IDF weight of each term in each line is computed once
+            if (Controller.useTDIDF) {
+                documentTermMatrix.computeTfIdf(countTermsInDocs, Controller.numberOfDocs);
+            }
 
-            if (countTermsInThisDoc < 2) {
-                if (countTermsInThisDoc > 0) {
-//                        System.out.println("term 1 in the currLine: " + currWords.split(wordSeparator)[0]);
-                }
-                System.out.println("breaking because just one word");
-
-                continue;
+            //COUNTING THE PAIRS OF TERMS OF EACH LINE
+            if (!useWindow()) {
+                CooccurrenceProduct product = new CooccurrenceProduct(documentTermMatrix, nestedTerms, Controller.useTDIDF);
+                PairCounts setCombinations = product.compute(pool, nbThreads * CHUNKS_PER_THREAD);
+                jointCounts = product.getJointCounts();
+                return setCombinations;
+            }
+            List<Future<WindowPairsCounter>> counters = new ArrayList();
+            for (int i = 0; i < windowPairs.size(); i++) {
+                counters.add(pool.submit(new WindowPairsCounter(windowPairs.get(i), chunkStarts[i])));
             }
+            //the weights and the counts get the same pairs in the same order: the positions of an edge are the same
+            PairCounts setCombinations = new PairCounts();
+            PairCounts counts = new PairCounts();
+            for (Future<WindowPairsCounter> future : counters) {
+                setCombinations.addAll(future.get().setCombinations);
+                counts.addAll(future.get().counts);
+            }
+            jointCounts = new int[counts.size()];
+            for (int i = 0; i < jointCounts.length; i++) {
+                jointCounts[i] = counts.getWeight(i);
+            }
+            return setCombinations;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
+    /**
+     * The frequent terms found in each line, once launch() has run: lines of
+     * less than 2 tokens are not in the matrix. Its columns are the frequent
+     * terms, in the order of the TermCounts given to the constructor.
+     */
+    public DocumentTermMatrix getDocumentTermMatrix() {
+        return documentTermMatrix;
+    }
 
-            if (currWords == null) {
-                System.out.println("breaking because of null string!");
-                continue;
-            }
+    /**
+     * The number of lines where the two terms of each edge co-occur, in the
+     * order of the edges returned by launch(), whatever the weights of the
+     * edges.
+     */
+    public int[] getJointCounts() {
+        return jointCounts;
+    }
 
-//                System.out.println("this is the line \"" + currWords + "\"");
-//                currWords = TextCleaner.doBasicCleaning(currWords);
-//                System.out.println("currWords after basic cleaning: " + currWords);
-//                System.out.println("currWords:");
-            if (currWords.equals("")) {
-                System.out.println("breaking because of empty string!");
-                continue;
-            }
+    //the number of lines of less than 2 tokens (empty lines included), which make no pair, once launch() has run
+    public int getNbLinesWithoutPairs() {
+        return nbLinesWithoutPairs;
+    }
 
+    /**
+     * The number of lines containing each frequent term, by term id, once
+     * launch() has run. Lines of less than 2 tokens are counted.
+     */
+    public TermCounts getNbDocsContainingTerms() {
+        TermCounts nbDocsContainingTerms = new TermCounts(freqTerms.length);
+        for (int i = 0; i < freqTerms.length; i++) {
+            nbDocsContainingTerms.add(freqTerms[i], countTermsInDocs[i]);
+        }
+        return nbDocsContainingTerms;
+    }
 
-            Iterator<String> it3 = setFreqWords.elementSet().iterator();
+    private void addMatches(LinesMatcher matcher) {
+        for (int i = 0; i < freqTerms.length; i++) {
+            countTermsInDocs[i] += matcher.countTermsInDocs[i];
+        }
+        nbLinesWithoutPairs += matcher.nbLinesWithoutPairs;
+        documents.add(matcher.documents);
+        if (useWindow()) {
+            windowPairs.add(Arrays.copyOf(matcher.windowPairs, matcher.nbWindowPairs));
+        }
+    }
 
-            while (it3.hasNext()) {
-                String currFreqTerm = it3.next();
+    private static boolean useWindow() {
+        return Controller.cooccurrenceWindow > 0 && !Controller.useAAPI_Entity;
+    }
 
-                if (currWords.contains(currFreqTerm)) {
-                    ngramsInLine.add(currFreqTerm);
-//                        System.out.println("currFreqTerm matched is:" + currFreqTerm);
+    private static <T> List<List<T>> chunks(List<T> list, int nbChunks) {
+        List<List<T>> chunks = new ArrayList();
+        int chunkSize = Math.max(1, (list.size() + nbChunks - 1) / nbChunks);
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            chunks.add(list.subList(from, Math.min(list.size(), from + chunkSize)));
+        }
+        return chunks;
+    }
 
-                    //snippet to find the count of a word in the current line
-                    int lastIndex = 0;
-                    int countTermInThisDoc = 0;
-                    while (lastIndex != -1) {
-                        lastIndex = currWords.indexOf(currFreqTerm, lastIndex);
+    /**
+     * Finds the frequent terms of a chunk of lines, in one scan of each line.
+     * The number of lines containing each term (for the TD IDF measure) is
+     * counted along the way, and the terms found are kept so that lines are
+     * not scanned a second time.
+     */
+    private class LinesMatcher implements Callable<LinesMatcher> {
+
+        private final List<String> lines;
+        //lines of the TokenStore: number of tokens of the line, then its tokens
+        private final int[] tokenLines;
+        //the terms of each line, designated by their index in freqTerms
+        final DocumentTermMatrix documents = new DocumentTermMatrix(freqTerms);
+        final int[] countTermsInDocs = new int[freqTerms.length];
+        private final TermOccurrences occurrences = new TermOccurrences(freqTerms.length);
+        //with a co-occurrence window: the pairs of entries of the documents found in the window, smaller entry in the high 32 bits
+        long[] windowPairs = new long[64];
+        int nbWindowPairs;
+        int nbLinesWithoutPairs;
+        //the entry of each term in the current line
+        private final int[] entryOfTerm = new int[freqTerms.length];
+
+        LinesMatcher(List<String> lines) {
+            this.lines = lines;
+            this.tokenLines = null;
+        }
 
-                        if (lastIndex != -1) {
-                            countTermInThisDoc++;
-                            lastIndex++;
-                        } else {
-                            break;
-                        }
-                    }
-//                        System.out.println("countTermInThisDoc: " + countTermInThisDoc);
-                    //end snippet
-                    if (Controller.useTDIDF) {
-//                        System.out.println("countTermsInThisDoc: " + countTermsInThisDoc);
-                        int countDocsInCorpus = Controller.numberOfDocs;
-//                        System.out.println("countDocsInCorpus: " + countDocsInCorpus);
-                        int countDocsContainingThisTerm = countTermsInDocs.count(currFreqTerm);
-//                        System.out.println("countDocsContainingThisTerm: " + countDocsContainingThisTerm);
-                        float tdIDFscore = (float) (((float) countTermInThisDoc / (float) countTermsInThisDoc) * (float) Math.log((double) countDocsInCorpus / (double) countDocsContainingThisTerm));
-//                        System.out.println("tdIDFscore: " + tdIDFscore);
-
-                        tdIDFScores.put(currFreqTerm, tdIDFscore);
+        LinesMatcher(int[] tokenLines) {
+            this.lines = null;
+            this.tokenLines = tokenLines;
+        }
 
+        @Override
+        public LinesMatcher call() {
+            if (lines == null) {
+                //a TokenTermMatcher keeps buffers: one per worker
+                TokenTermMatcher termsMatcher = new TokenTermMatcher(dictionary, freqTerms);
+                int position = 0;
+                while (position < tokenLines.length) {
+                    int nbTokens = tokenLines[position];
+                    int from = position + 1;
+                    position += nbTokens + 1;
+                    if (nbTokens == 0) {
+                        nbLinesWithoutPairs++;
+                        continue;
                     }
-//                        System.out.println(currFreqTerm);
-
+                    termsMatcher.match(tokenLines, from, nbTokens, occurrences);
+                    addLine();
                 }
-
+                return this;
             }
 
-            String arrayWords[] = new String[ngramsInLine.size()];
+            for (String currWords : lines) {
 
-//                for (String element : arrayWords) {
-//                    System.out.print(element+" ");
-//                }
-//                System.out.println("");
-            if (arrayWords.length >= 2) {
-                HashSet<String> setOcc = new HashSet();
-                setOcc.addAll(new PerformCombinations(ngramsInLine.toArray(arrayWords)).call());
+//                System.out.println("in the loop: " + currWords);
+                if (currWords == null) {
+                    System.out.println("breaking because of null string!");
+                    continue;
+                }
+                if (currWords.equals("")) {
+                    System.out.println("breaking because of empty string!");
+                    continue;
+                }
 
-                Iterator<String> itOcc = setOcc.iterator();
-                while (itOcc.hasNext()) {
+                entitiesMatcher.match(currWords, occurrences);
+                occurrences.setNbTokens(currWords.split("\\|").length);
+                addLine();
+            }
+            return this;
+        }
 
-                    String pairOcc = itOcc.next();
-//                        System.out.println("current pair is:"+ pairOcc);
-                    String[] pair = pairOcc.split(",");
+        //keeps the terms found in the line, and clears the occurrences for the next line
+        private void addLine() {
+            //lines of one word make no pair, but count in the number of docs containing their term
+            boolean kept = occurrences.getNbTokens() >= 2;
+            if (kept) {
+                documents.addDoc(occurrences.getNbTokens());
+            }
+            for (int i = 0; i < occurrences.getNbTerms(); i++) {
+                int term = occurrences.getTerm(i);
+                countTermsInDocs[term]++;
+                if (kept) {
+                    entryOfTerm[term] = documents.getNbEntries();
+                    documents.addEntry(term, occurrences.getCount(term));
+                }
+            }
+            if (kept && useWindow()) {
+                addWindowPairs();
+            }
+            occurrences.clear();
 
+            if (!kept) {
+                nbLinesWithoutPairs++;
+            }
+        }
 
-                    if (pair.length == 2
-                            & !pair[0].trim().equals(pair[1].trim()) & !pair[0].contains(pair[1]) & !pair[1].contains(pair[0])) {
+        /**
+         * The pairs of terms of the line starting less than the window
+         * apart. The hits are in the order of their positions: the hits in the
+         * window of a hit are the hits since the first one less than the
+         * window before it.
+         */
+        private void addWindowPairs() {
+            int firstPairOfLine = nbWindowPairs;
+            int firstInWindow = 0;
+            for (int hit = 0; hit < occurrences.getNbHits(); hit++) {
+                int position = occurrences.getHitPosition(hit);
+                while (occurrences.getHitPosition(firstInWindow) <= position - Controller.cooccurrenceWindow) {
+                    firstInWindow++;
+                }
+                int entry = entryOfTerm[occurrences.getHitTerm(hit)];
+                for (int other = firstInWindow; other < hit; other++) {
+                    int otherEntry = entryOfTerm[occurrences.getHitTerm(other)];
+                    if (otherEntry != entry) {
+                        if (nbWindowPairs == windowPairs.length) {
+                            windowPairs = Arrays.copyOf(windowPairs, nbWindowPairs * 2);
+                        }
+                        windowPairs[nbWindowPairs++] = ((long) Math.min(entry, otherEntry) << 32) | Math.max(entry, otherEntry);
+                    }
+                }
+            }
+            //each pair once per line, in the order of its entries (as with the pairs of the whole line)
+            Arrays.sort(windowPairs, firstPairOfLine, nbWindowPairs);
+            int nbPairsOfLine = 0;
+            for (int i = firstPairOfLine; i < nbWindowPairs; i++) {
+                if (nbPairsOfLine == 0 || windowPairs[i] != windowPairs[firstPairOfLine + nbPairsOfLine - 1]) {
+                    windowPairs[firstPairOfLine + nbPairsOfLine++] = windowPairs[i];
+                }
+            }
+            nbWindowPairs = firstPairOfLine + nbPairsOfLine;
+        }
+    }
 
-                        if (Controller.useTDIDF) {
-                            int weightOfThisEdge = Math.round(10000 * (float) ((float) tdIDFScores.get(pair[0]) + (float) tdIDFScores.get(pair[1])));
-//                            System.out.println(weightOfThisEdge);
-                            multisetOcc.add(pairOcc, weightOfThisEdge);
-                        } else {
-                            multisetOcc.add(pairOcc, (ngramsInLine.count(pair[0]) + ngramsInLine.count(pair[1])));
+    /**
+     * Adds up the weights of the pairs found in the windows of a chunk of
+     * lines, with the same weights as the pairs of a whole line, and counts
+     * the lines of each pair.
+     */
+    private class WindowPairsCounter implements Callable<WindowPairsCounter> {
+
+        private final long[] pairs;
+        //entry of the documentTermMatrix of the first entry of the chunk
+        private final int chunkStart;
+        final PairCounts setCombinations = new PairCounts();
+        final PairCounts counts = new PairCounts();
+
+        WindowPairsCounter(long[] pairs, int chunkStart) {
+            this.pairs = pairs;
+            this.chunkStart = chunkStart;
+        }
 
-                        }
+        @Override
+        public WindowPairsCounter call() {
+            for (long pair : pairs) {
+                int entryA = chunkStart + (int) (pair >>> 32);
+                int entryB = chunkStart + (int) pair;
+                int termA = documentTermMatrix.getTerm(entryA);
+                int termB = documentTermMatrix.getTerm(entryB);
+                if (nestedTerms.contains(termA, termB)) {
+                    continue;
+                }
+                counts.add(freqTerms[termA], freqTerms[termB], 1);
+                if (Controller.useTDIDF) {
+                    int weightOfThisEdge = Math.round(10000 * (float) (documentTermMatrix.getWeight(entryA) + documentTermMatrix.getWeight(entryB)));
+                    setCombinations.add(freqTerms[termA], freqTerms[termB], weightOfThisEdge);
+                } else {
+                    //binary counting: each term counts once in the line
+                    setCombinations.add(freqTerms[termA], freqTerms[termB], 1 + 1);
+                }
+            }
+            return this;
+        }
+    }
 
+    /**
+     * Pairs of frequent terms (as indices in freqTerms) where one term is
+     * part of the other, such as "digital" and "digital library". Entities
+     * from Alchemy API are compared as Strings, other terms on their tokens.
+     */
+    private PairCounts findNestedTerms(int[] freqTerms) {
+        PairCounts nested = new PairCounts();
+        if (Controller.useAAPI_Entity) {
+            for (int i = 0; i < freqTerms.length; i++) {
+                String termI = dictionary.term(freqTerms[i]);
+                for (int j = i + 1; j < freqTerms.length; j++) {
+                    String termJ = dictionary.term(freqTerms[j]);
+                    if (termI.contains(termJ) || termJ.contains(termI)) {
+                        nested.add(i, j, 1);
                     }
-
                 }
-                setCombinations.addAll(multisetOcc);
             }
-            ngramsInLine.clear();
-            multisetOcc.clear();
+            return nested;
+        }
 
+        //position of each frequent term in freqTerms
+        TermCounts indexOfTerm = new TermCounts(freqTerms.length);
+        for (int i = 0; i < freqTerms.length; i++) {
+            indexOfTerm.add(freqTerms[i], i + 1);
+        }
+        int[] tokens = new int[16];
+        for (int i = 0; i < freqTerms.length; i++) {
+            int length = dictionary.termLength(freqTerms[i]);
+            if (tokens.length < length) {
+                tokens = new int[length];
+            }
+            dictionary.tokensOfTerm(freqTerms[i], tokens);
+            for (int subLength = 1; subLength < length; subLength++) {
+                for (int start = 0; start + subLength <= length; start++) {
+                    int subTerm = dictionary.findTerm(tokens, start, subLength);
+                    if (subTerm != -1 && indexOfTerm.contains(subTerm)) {
+                        nested.add(i, indexOfTerm.count(subTerm) - 1, 1);
+                    }
+                    //the last word of a part can also be found through its lemma ("humanitie" in "digital humanities")
+                    int lastToken = tokens[start + subLength - 1];
+                    int lemma = dictionary.findToken(Lemmatizer.lemmatizeWord(dictionary.token(lastToken)));
+                    if (lemma != -1 && lemma != lastToken) {
+                        tokens[start + subLength - 1] = lemma;
+                        subTerm = dictionary.findTerm(tokens, start, subLength);
+                        tokens[start + subLength - 1] = lastToken;
+                        if (subTerm != -1 && indexOfTerm.contains(subTerm)) {
+                            nested.add(i, indexOfTerm.count(subTerm) - 1, 1);
+                        }
+                    }
+                }
+            }
         }
-        return setCombinations;
+        return nested;
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Count-Min Sketch: approximate counts of items (here, n-grams designated by
+ * their 64 bit hash) in a fixed amount of memory, whatever the number of
+ * distinct items. A count is never underestimated. With N the total of all
+ * the counts, it is overestimated by more than epsilon x N with a probability
+ * below delta.
+ *
+ * The sketch has depth = ceil(ln(1 / delta)) rows of width = ceil(e /
+ * epsilon) counters. An item increments one counter per row, and its estimate
+ * is the smallest of its counters. Updates are conservative: only the
+ * counters equal to the current estimate are incremented, which lowers the
+ * overestimates without changing the bound.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final double epsilon;
+    private final double delta;
+    private final int[] counters;
+    private final int[] slotsOfItem;
+    private long total;
+
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon must be > 0 and delta between 0 and 1");
+        }
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+        //the counters are in one array, indexed by an int
+        long nbCounters = (long) width * depth;
+        if (nbCounters > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("a Count-Min Sketch for epsilon = " + epsilon + " and delta = " + delta + " would have " + nbCounters + " counters, more than an array can hold: use a larger epsilon or delta");
+        }
+        this.counters = new int[(int) nbCounters];
+        this.slotsOfItem = new int[depth];
+    }
+
+    /**
+     * Adds 1 to the count of the item, and returns its new estimated count.
+     */
+    public int add(long item) {
+        total++;
+        int estimate = Integer.MAX_VALUE;
+        slots(item);
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[slotsOfItem[row]]);
+        }
+        for (int row = 0; row < depth; row++) {
+            if (counters[slotsOfItem[row]] == estimate) {
+                counters[slotsOfItem[row]]++;
+            }
+        }
+        return estimate + 1;
+    }
+
+    //sum of all the counts added
+    public long getTotal() {
+        return total;
+    }
+
+    //the maximal overestimate of a count, with probability 1 - delta
+    public double getMaxError() {
+        return epsilon * total;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    //one counter per row, from two hashes of the item (double hashing)
+    private void slots(long item) {
+        int h1 = TermDictionary.mix(item);
+        int h2 = TermDictionary.mix(item ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int row = 0; row < depth; row++) {
+            int slot = (h1 + row * h2) % width;
+            if (slot < 0) {
+                slot += width;
+            }
+            slotsOfItem[row] = row * width + slot;
+        }
+    }
+}
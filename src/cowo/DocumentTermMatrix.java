@@ -0,0 +1,203 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * The frequent terms found in each document (line), as a sparse matrix in
+ * CSR form: the entries of all the documents one after the other, each entry
+ * being a term (its index in the list of frequent terms) and its number of
+ * occurrences in the document. The entries of document d are
+ * getStart(d) to getEnd(d) - 1.
+ *
+ * The TF-IDF weight of each entry is computed once, when the number of
+ * documents containing each term is known (computeTfIdf), and stored next to
+ * the counts.
+ *
+ * The matrix is built once from the lines and kept for the stages which need
+ * the terms of each line (TF-IDF, co-occurrences). The columns can also be
+ * indexed (indexColumns): the entries of each term, in the order of the
+ * documents, as in the CSR form of the transposed matrix.
+ */
+public class DocumentTermMatrix {
+
+    //term id (in the TermDictionary) of each column
+    private final int[] termIds;
+    private int nbDocs;
+    //docStarts[d] is the first entry of document d, docStarts[nbDocs] the number of entries
+    private int[] docStarts = new int[1024];
+    private int[] nbTokensOfDoc = new int[1024];
+    private int[] terms = new int[4096];
+    private int[] counts = new int[4096];
+    private float[] weights;
+    //columnStarts[t] is the first entry of term t in columnEntries and columnDocs
+    private int[] columnStarts;
+    private int[] columnEntries;
+    private int[] columnDocs;
+
+    /**
+     * @param termIds the term id of each column: the entries designate a term
+     * by its column
+     */
+    public DocumentTermMatrix(int[] termIds) {
+        this.termIds = termIds;
+    }
+
+    /**
+     * Adds a document: its number of tokens, then its terms with addEntry.
+     */
+    public void addDoc(int nbTokens) {
+        if (nbDocs + 1 == docStarts.length) {
+            docStarts = Arrays.copyOf(docStarts, docStarts.length * 2);
+            nbTokensOfDoc = Arrays.copyOf(nbTokensOfDoc, nbTokensOfDoc.length * 2);
+        }
+        nbTokensOfDoc[nbDocs] = nbTokens;
+        nbDocs++;
+        docStarts[nbDocs] = docStarts[nbDocs - 1];
+    }
+
+    //adds a term to the last document
+    public void addEntry(int term, int count) {
+        int nbEntries = docStarts[nbDocs];
+        if (nbEntries == terms.length) {
+            terms = Arrays.copyOf(terms, nbEntries * 2);
+            counts = Arrays.copyOf(counts, nbEntries * 2);
+        }
+        terms[nbEntries] = term;
+        counts[nbEntries] = count;
+        docStarts[nbDocs]++;
+    }
+
+    //adds the documents of another matrix (with the same columns) after those of this one
+    public void addAll(DocumentTermMatrix other) {
+        int nbEntries = docStarts[nbDocs];
+        int nbOtherEntries = other.docStarts[other.nbDocs];
+        if (nbDocs + other.nbDocs >= docStarts.length) {
+            int capacity = Integer.highestOneBit(nbDocs + other.nbDocs) << 1;
+            docStarts = Arrays.copyOf(docStarts, capacity);
+            nbTokensOfDoc = Arrays.copyOf(nbTokensOfDoc, capacity);
+        }
+        if (nbEntries + nbOtherEntries > terms.length) {
+            int capacity = Integer.highestOneBit(nbEntries + nbOtherEntries) << 1;
+            terms = Arrays.copyOf(terms, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        System.arraycopy(other.terms, 0, terms, nbEntries, nbOtherEntries);
+        System.arraycopy(other.counts, 0, counts, nbEntries, nbOtherEntries);
+        System.arraycopy(other.nbTokensOfDoc, 0, nbTokensOfDoc, nbDocs, other.nbDocs);
+        for (int d = 1; d <= other.nbDocs; d++) {
+            docStarts[nbDocs + d] = nbEntries + other.docStarts[d];
+        }
+        nbDocs += other.nbDocs;
+    }
+
+    /**
+     * Indexes the entries of each term (getColumnStart, getColumnEnd,
+     * getColumnEntry, getColumnDoc), with a counting sort on the terms: the
+     * entries of a term come in the order of the documents. No document
+     * should be added afterwards.
+     */
+    public void indexColumns() {
+        int nbEntries = docStarts[nbDocs];
+        columnStarts = new int[termIds.length + 1];
+        for (int e = 0; e < nbEntries; e++) {
+            columnStarts[terms[e] + 1]++;
+        }
+        for (int t = 0; t < termIds.length; t++) {
+            columnStarts[t + 1] += columnStarts[t];
+        }
+        columnEntries = new int[nbEntries];
+        columnDocs = new int[nbEntries];
+        int[] next = Arrays.copyOf(columnStarts, termIds.length);
+        for (int d = 0; d < nbDocs; d++) {
+            for (int e = docStarts[d]; e < docStarts[d + 1]; e++) {
+                int position = next[terms[e]]++;
+                columnEntries[position] = e;
+                columnDocs[position] = d;
+            }
+        }
+    }
+
+    /**
+     * Weight of each entry: (count of the term in the document / number of
+     * tokens of the document) x log(nbDocsInCorpus / number of documents
+     * containing the term).
+     *
+     * @param nbDocsContainingTerm by term
+     */
+    public void computeTfIdf(int[] nbDocsContainingTerm, int nbDocsInCorpus) {
+        weights = new float[docStarts[nbDocs]];
+        for (int d = 0; d < nbDocs; d++) {
+            for (int e = docStarts[d]; e < docStarts[d + 1]; e++) {
+                weights[e] = (float) (((float) counts[e] / (float) nbTokensOfDoc[d]) * (float) Math.log((double) nbDocsInCorpus / (double) nbDocsContainingTerm[terms[e]]));
+            }
+        }
+    }
+
+    public int getNbTerms() {
+        return termIds.length;
+    }
+
+    //the term id of a column
+    public int getTermId(int term) {
+        return termIds[term];
+    }
+
+    public int getNbDocs() {
+        return nbDocs;
+    }
+
+    public int getNbEntries() {
+        return docStarts[nbDocs];
+    }
+
+    public int getNbTokens(int doc) {
+        return nbTokensOfDoc[doc];
+    }
+
+    public int getStart(int doc) {
+        return docStarts[doc];
+    }
+
+    public int getEnd(int doc) {
+        return docStarts[doc + 1];
+    }
+
+    //the column of the term of an entry
+    public int getTerm(int entry) {
+        return terms[entry];
+    }
+
+    public int getCount(int entry) {
+        return counts[entry];
+    }
+
+    //the TF-IDF weight of the entry: computeTfIdf must have been called
+    public float getWeight(int entry) {
+        return weights[entry];
+    }
+
+    //the entries of a term are getColumnEntry(getColumnStart(term)) to getColumnEntry(getColumnEnd(term) - 1): indexColumns must have been called
+    public int getColumnStart(int term) {
+        return columnStarts[term];
+    }
+
+    public int getColumnEnd(int term) {
+        return columnStarts[term + 1];
+    }
+
+    public int getColumnEntry(int position) {
+        return columnEntries[position];
+    }
+
+    //the document of getColumnEntry(position)
+    public int getColumnDoc(int position) {
+        return columnDocs[position];
+    }
+}
@@ -4,17 +4,51 @@
  */
 package cowo;
 
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 
 /**
  *
  * @author C. Levallois
+ *
+ * The rules are suffixes ("ies", "'s", the plural "s"...), compiled in a trie
+ * of the words read from their end: a word is lemmatized by reading its last
+ * characters once, and the rule of the longest suffix found applies.
+ *
+ * An instance lemmatizes the tokens of a TermDictionary and keeps the
+ * results, by token id: each distinct word is lemmatized once, and the lemma
+ * of a term is made from the lemmas of its tokens. An instance is not
+ * thread-safe.
  */
 public class Lemmatizer {
 
-    Lemmatizer() {
+    private static final SuffixNode SUFFIX_RULES = new SuffixNode();
+    //token ids not computed yet
+    private static final int UNKNOWN = -2;
+    //lemma of a token which becomes empty (such as "'s")
+    private static final int EMPTY = -1;
+    private final TermDictionary dictionary;
+    private int[] lowerCaseOf = new int[0];
+    private int[] lemmaOf = new int[0];
+    private int[] lemmaWithoutPluralRuleOf = new int[0];
+
+    static {
+        SUFFIX_RULES.addRule("ies", 3, "y", false);
+        SUFFIX_RULES.addRule("'s", 2, "", false);
+        SUFFIX_RULES.addRule("s", 1, "", true);
+        SUFFIX_RULES.addRule("s'", 2, "", true);
+        //not plurals
+        SUFFIX_RULES.addRule("us", 0, "", false);
+        SUFFIX_RULES.addRule("as", 0, "", false);
+        SUFFIX_RULES.addRule("ss", 0, "", false);
+        SUFFIX_RULES.addRule("is", 0, "", false);
+        SUFFIX_RULES.addRule("'", 1, "", false);
+    }
+
+    Lemmatizer(TermDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
     public static String doLemmatizationReturnString(Multiset wordsOfLine) {
@@ -25,38 +59,7 @@ public class Lemmatizer {
 
         while (itwl.hasNext()) {
             String currEntryOriginal = itwl.next().trim().toLowerCase();
-            String currEntry = currEntryOriginal;
-
-
-//                    if ("consumers".equals(currEntry))
-//                        System.out.println("consumers");
-
-
-            if (currEntry.endsWith("ies")) {
-                if (!Controller.setNoLemma.contains(currEntry)) {
-                    currEntry = currEntry.substring(0, currEntry.length() - 3) + "y";
-
-                }
-            } else if (currEntry.endsWith("'s")) {
-                currEntry = currEntry.substring(0, currEntry.length() - 2);
-
-
-            } else if ((currEntry.endsWith("s") | currEntry.endsWith("s'"))
-                    && !currEntry.endsWith("us")
-                    && !currEntry.endsWith("as")
-                    && !currEntry.endsWith("ss")
-                    && !Controller.setNoLemma.contains(currEntry)
-                    && !currEntry.endsWith("is")) {
-                if (currEntry.endsWith("s")) {
-                    currEntry = currEntry.substring(0, currEntry.length() - 1);
-                }
-                if (currEntry.endsWith("s'")) {
-                    currEntry = currEntry.substring(0, currEntry.length() - 2);
-                }
-
-            } else if (currEntry.endsWith("'")) {
-                currEntry = currEntry.substring(0, currEntry.length() - 1);
-            }
+            String currEntry = lemmatizeWord(currEntryOriginal);
 
             for (int i = 0; i < wordsOfLine.count(currEntryOriginal); i++) {
                 if (currEntry.trim().length() >= Controller.minWordLength) {
@@ -70,55 +73,172 @@ public class Lemmatizer {
 
     }
 
-    public static HashMultiset doLemmatizationReturnMultiSet(Multiset wordsOfLine) {
+    /**
+     * Lemma of a single word, with the rules applied to the last word of
+     * n-grams in doLemmatization.
+     */
+    public static String lemmatizeWord(String word) {
+        return lemmatizeWord(word, true);
+    }
 
-        HashMultiset result = HashMultiset.create();
+    /**
+     * @param pluralRule false when the term ending with this word is itself in
+     * the list of words not to lemmatize: the plural "s" is then kept.
+     */
+    static String lemmatizeWord(String word, boolean pluralRule) {
+        if (Controller.setNoLemma.contains(word)) {
+            return word;
+        }
+        SuffixNode node = SUFFIX_RULES;
+        SuffixNode rule = null;
+        for (int i = word.length() - 1; i >= 0; i--) {
+            node = node.child(word.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.isRule && (pluralRule || !node.pluralRule)) {
+                rule = node;
+            }
+        }
+        if (rule == null || rule.nbCharsRemoved == 0) {
+            return word;
+        }
+        return word.substring(0, word.length() - rule.nbCharsRemoved) + rule.replacement;
+    }
 
-        Iterator<String> itwl = wordsOfLine.elementSet().iterator();
-        String terms[];
-        String lastTerm;
+    /**
+     * The token of the same word in lower case.
+     */
+    int lowerCase(int token) {
+        if (token >= lowerCaseOf.length) {
+            lowerCaseOf = grow(lowerCaseOf, token);
+        }
+        if (lowerCaseOf[token] == UNKNOWN) {
+            lowerCaseOf[token] = dictionary.tokenId(dictionary.token(token).toLowerCase());
+        }
+        return lowerCaseOf[token];
+    }
 
-        while (itwl.hasNext()) {
-            String currEntryOriginal = itwl.next().trim().toLowerCase();
-            String currEntry = currEntryOriginal;
-            terms = currEntry.split(" ");
-            lastTerm = terms[terms.length - 1];
-            if (Controller.setNoLemma.contains(lastTerm)) {
-                result.add(currEntry.trim(), wordsOfLine.count(currEntryOriginal));
-                continue;
-            }
-//                    if ("consumers".equals(currEntry))
-//                        System.out.println("consumers");
-            
-            if (currEntry.endsWith("ies")) {
-                currEntry = currEntry.substring(0, currEntry.length() - 3) + "y";
-            } else if (currEntry.endsWith("'s")) {
-                currEntry = currEntry.substring(0, currEntry.length() - 2);
-
-
-            } else if ((currEntry.endsWith("s") | currEntry.endsWith("s'"))
-                    && !currEntry.endsWith("us")
-                    && !currEntry.endsWith("as")
-                    && !currEntry.endsWith("ss")
-                    && !Controller.setNoLemma.contains(currEntry)
-                    && !currEntry.endsWith("is")) {
-                if (currEntry.endsWith("s")) {
-                    currEntry = currEntry.substring(0, currEntry.length() - 1);
-                }
-                if (currEntry.endsWith("s'")) {
-                    currEntry = currEntry.substring(0, currEntry.length() - 2);
-                }
+    /**
+     * The token of the lemma of a token, or -1 if the lemma is empty. The
+     * token is lemmatized as it is: see lowerCase.
+     */
+    int lemma(int token, boolean pluralRule) {
+        if (token >= lemmaOf.length) {
+            lemmaOf = grow(lemmaOf, token);
+            lemmaWithoutPluralRuleOf = grow(lemmaWithoutPluralRuleOf, token);
+        }
+        int[] lemmas = pluralRule ? lemmaOf : lemmaWithoutPluralRuleOf;
+        if (lemmas[token] == UNKNOWN) {
+            String lemma = lemmatizeWord(dictionary.token(token), pluralRule);
+            lemmas[token] = lemma.isEmpty() ? EMPTY : dictionary.tokenId(lemma);
+        }
+        return lemmas[token];
+    }
 
-            } else if (currEntry.endsWith("'")) {
-                currEntry = currEntry.substring(0, currEntry.length() - 1);
-            }
+    /**
+     * The lemma of a token in lower case, or -1 if it is empty: used to
+     * lemmatize all the tokens of the text before the n-grams are counted.
+     */
+    int lemmaOfToken(int token) {
+        return lemma(lowerCase(token), true);
+    }
 
-            result.add(currEntry.trim(), wordsOfLine.count(currEntryOriginal));
+    private int[] grow(int[] ids, int token) {
+        int previousLength = ids.length;
+        int[] grown = Arrays.copyOf(ids, Math.max(Math.max(dictionary.getNbTokens(), token + 1), previousLength * 2));
+        Arrays.fill(grown, previousLength, grown.length, UNKNOWN);
+        return grown;
+    }
 
+    /**
+     * Lemmatizes the last word of each term (in lower case), and adds up the
+     * counts of terms which end up with the same lemma.
+     */
+    public static TermCounts doLemmatization(TermCounts terms, TermDictionary dictionary) {
+
+        TermCounts result = new TermCounts(terms.size());
+        BitSet noLemmaTerms = dictionary.termIds(Controller.setNoLemma);
+        Lemmatizer lemmatizer = new Lemmatizer(dictionary);
+        int[] words = new int[8];
+
+        for (int i = 0; i < terms.size(); i++) {
+            int term = terms.getTerm(i);
+            int length = dictionary.termLength(term);
+            if (words.length < length) {
+                words = new int[length];
+            }
+            for (int j = 0; j < length; j++) {
+                words[j] = lemmatizer.lowerCase(dictionary.tokenOfTerm(term, j));
+            }
 
-        } // end looping through all words of the line which is currently read
+            //the plural rule is not applied to terms which are in the list of words not to lemmatize
+            boolean pluralRule = true;
+            if (length > 1) {
+                int lowerCaseTerm = dictionary.findTerm(words, 0, length);
+                pluralRule = lowerCaseTerm == -1 || !noLemmaTerms.get(lowerCaseTerm);
+            }
+            int lemma = lemmatizer.lemma(words[length - 1], pluralRule);
+
+            int lemmatizedTerm;
+            if (lemma != EMPTY) {
+                words[length - 1] = lemma;
+                lemmatizedTerm = dictionary.termId(words, 0, length);
+            } else if (length > 1) {
+                lemmatizedTerm = dictionary.termId(words, 0, length - 1);
+            } else {
+                continue;
+            }
+            result.add(lemmatizedTerm, terms.getCount(i));
+
+        } // end looping through all terms
 
         return result;
 
     }
+
+    /**
+     * A node of the trie of the suffixes, read from the end of the word. A
+     * node is a rule when its suffix is one: the last nbCharsRemoved
+     * characters of the word are replaced by replacement (a rule removing no
+     * character is an exception, which keeps the word unchanged).
+     */
+    private static class SuffixNode {
+
+        private char[] chars = new char[0];
+        private SuffixNode[] children = new SuffixNode[0];
+        boolean isRule;
+        int nbCharsRemoved;
+        String replacement;
+        //the rule only applies when the plural rule does
+        boolean pluralRule;
+
+        SuffixNode child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addRule(String suffix, int nbCharsRemoved, String replacement, boolean pluralRule) {
+            SuffixNode node = this;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                SuffixNode child = node.child(suffix.charAt(i));
+                if (child == null) {
+                    child = new SuffixNode();
+                    node.chars = Arrays.copyOf(node.chars, node.chars.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.chars[node.chars.length - 1] = suffix.charAt(i);
+                    node.children[node.children.length - 1] = child;
+                }
+                node = child;
+            }
+            node.isRule = true;
+            node.nbCharsRemoved = nbCharsRemoved;
+            node.replacement = replacement;
+            node.pluralRule = pluralRule;
+        }
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import Utils.Clock;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Finds the maximal repeated phrases of the text, of any number of words: a
+ * phrase is a maximal repeat when adding a word before it, or after it, would
+ * make it appear in fewer places. Used instead of NGramFinder, it gives the
+ * longest frequent phrases directly, with no limit on n.
+ *
+ * The tokens of all the lines are put one after the other, each line ending
+ * with its own separator, and a suffix array of this text is built (prefix
+ * doubling, with a radix sort at each step), then the LCP array (Kasai et
+ * al.): the length of the common prefix of each suffix and the previous one
+ * in sorted order. A phrase appearing several times is the common prefix of a
+ * range of consecutive suffixes (an lcp-interval); the intervals are visited
+ * bottom-up with a stack. As with NGramFinder, a phrase is counted once per
+ * line where it appears: the repeats within a line are subtracted with the
+ * method of Hui (1992).
+ *
+ * Because the separators are all different, a suffix is sorted once its
+ * tokens up to the end of its line are: the number of doubling steps depends
+ * on the length of the lines, not on the length of the repeats of the text
+ * (when a corpus contains the same document many times, for example).
+ *
+ * The suffix array needs the whole text in memory, about 20 bytes per token
+ * at the peak.
+ */
+public class MaximalRepeatsFinder {
+
+    //left context of the occurrences of a phrase: none seen yet, or not all the same
+    private static final int NO_LEFT_TOKEN = -1;
+    private static final int DIFFERENT_LEFT_TOKENS = -2;
+    private final TermDictionary dictionary;
+    //the end of line i is stored as i, a token as its id + nbLines
+    private int[] text;
+    private int n;
+    private int nbLines;
+    private int nbPhrases;
+    private int[] phraseStarts = new int[1024];
+    private int[] phraseLengths = new int[1024];
+    private int[] phraseCounts = new int[1024];
+
+    public MaximalRepeatsFinder(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * The maximal repeats appearing in at least threshold lines, with the
+     * number of lines where they appear, in the order of their first
+     * occurrence in the text.
+     */
+    public TermCounts runIt(TokenStore lines, int threshold) throws IOException {
+        Clock extractingPhrases = new Clock("extracting maximal repeated phrases appearing in at least " + threshold + " lines (suffix array)");
+        readText(lines);
+        int[] sa = suffixArray(text, n, nbLines + dictionary.getNbTokens());
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) {
+            rank[sa[i]] = i;
+        }
+        int[] lcp = lcpArray(text, sa, rank, nbLines);
+        int[] previousInLine = previousInLine(text, rank, nbLines);
+        rank = null;
+        findMaximalRepeats(sa, lcp, previousInLine, Math.max(1, threshold));
+        sa = null;
+        lcp = null;
+        previousInLine = null;
+
+        TermCounts multisetToReturn = addInOrderOfFirstOccurrence();
+        text = null;
+        extractingPhrases.addText("number of tokens in the suffix array: " + n);
+        extractingPhrases.addText("number of maximal repeated phrases: " + multisetToReturn.size());
+        extractingPhrases.closeAndPrintClock();
+        return multisetToReturn;
+    }
+
+    //the tokens of all the lines, each line followed by its separator
+    private void readText(TokenStore lines) throws IOException {
+        text = new int[1024];
+        n = 0;
+        nbLines = lines.getNbLines();
+        if ((long) nbLines + dictionary.getNbTokens() > Integer.MAX_VALUE - 8) {
+            throw new IOException("too many lines and tokens for a suffix array");
+        }
+        int line = 0;
+        TokenStore.Reader reader = lines.reader();
+        while (reader.next()) {
+            int nbTokens = reader.getNbTokens();
+            if ((long) n + nbTokens + 1 > Integer.MAX_VALUE - 8) {
+                reader.close();
+                throw new IOException("the text is too large for a suffix array: more than " + (Integer.MAX_VALUE - 8) + " tokens");
+            }
+            if (n + nbTokens + 1 > text.length) {
+                text = Arrays.copyOf(text, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) text.length * 2, n + nbTokens + 1)));
+            }
+            int[] tokens = reader.getTokens();
+            for (int i = 0; i < nbTokens; i++) {
+                text[n++] = tokens[i] + nbLines;
+            }
+            text[n++] = line++;
+        }
+    }
+
+    /**
+     * Suffix array by prefix doubling: at step k the suffixes are sorted on
+     * their first 2k tokens, from their ranks on the first k tokens, with two
+     * passes of counting sort. Stops when all the ranks are different.
+     */
+    static int[] suffixArray(int[] text, int n, int alphabetSize) {
+        int[] sa = new int[n];
+        int[] rank = new int[n];
+        int[] tmp = new int[n];
+        int[] count = new int[Math.max(alphabetSize, n) + 1];
+        if (n == 0) {
+            return sa;
+        }
+        for (int i = 0; i < n; i++) {
+            count[text[i] + 1]++;
+        }
+        for (int c = 1; c <= alphabetSize; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            sa[count[text[i]]++] = i;
+        }
+        int nbRanks = 1;
+        rank[sa[0]] = 0;
+        for (int j = 1; j < n; j++) {
+            if (text[sa[j]] != text[sa[j - 1]]) {
+                nbRanks++;
+            }
+            rank[sa[j]] = nbRanks - 1;
+        }
+        for (int k = 1; nbRanks < n; k <<= 1) {
+            //order on the second half: the suffixes shorter than k first, then the others in the order of their rank at i + k
+            int p = 0;
+            for (int i = Math.max(0, n - k); i < n; i++) {
+                tmp[p++] = i;
+            }
+            for (int j = 0; j < n; j++) {
+                if (sa[j] >= k) {
+                    tmp[p++] = sa[j] - k;
+                }
+            }
+            //stable counting sort on the first half
+            Arrays.fill(count, 0, nbRanks + 1, 0);
+            for (int i = 0; i < n; i++) {
+                count[rank[i] + 1]++;
+            }
+            for (int r = 1; r <= nbRanks; r++) {
+                count[r] += count[r - 1];
+            }
+            for (int j = 0; j < n; j++) {
+                sa[count[rank[tmp[j]]]++] = tmp[j];
+            }
+            //new ranks, on the first 2k tokens
+            tmp[sa[0]] = 0;
+            nbRanks = 1;
+            for (int j = 1; j < n; j++) {
+                int a = sa[j - 1];
+                int b = sa[j];
+                if (rank[a] != rank[b] || (a + k < n ? rank[a + k] : -1) != (b + k < n ? rank[b + k] : -1)) {
+                    nbRanks++;
+                }
+                tmp[b] = nbRanks - 1;
+            }
+            int[] swap = rank;
+            rank = tmp;
+            tmp = swap;
+        }
+        return sa;
+    }
+
+    /**
+     * LCP array (Kasai et al.): lcp[i] is the number of tokens in common at
+     * the start of the suffixes sa[i - 1] and sa[i], without crossing a line
+     * end (the values below nbLines). Linear time: visiting the suffixes in
+     * the order of the text, the common prefix shrinks by at most one token
+     * from one suffix to the next.
+     */
+    static int[] lcpArray(int[] text, int[] sa, int[] rank, int nbLines) {
+        int n = sa.length;
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (rank[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int j = sa[rank[i] - 1];
+            while (i + h < n && j + h < n && text[i + h] == text[j + h] && text[i + h] >= nbLines) {
+                h++;
+            }
+            lcp[rank[i]] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+        return lcp;
+    }
+
+    //for each suffix, the closest suffix before it in sorted order which starts in the same line, or -1
+    private static int[] previousInLine(int[] text, int[] rank, int nbLines) {
+        int n = rank.length;
+        int[] previous = new int[n];
+        Arrays.fill(previous, -1);
+        int[] ranksOfLine = new int[256];
+        int lineStart = 0;
+        for (int i = 0; i < n; i++) {
+            if (text[i] >= nbLines) {
+                continue;
+            }
+            int nbTokens = i - lineStart;
+            if (ranksOfLine.length < nbTokens) {
+                ranksOfLine = new int[Math.max(nbTokens, ranksOfLine.length * 2)];
+            }
+            for (int t = 0; t < nbTokens; t++) {
+                ranksOfLine[t] = rank[lineStart + t];
+            }
+            Arrays.sort(ranksOfLine, 0, nbTokens);
+            for (int t = 1; t < nbTokens; t++) {
+                previous[ranksOfLine[t]] = ranksOfLine[t - 1];
+            }
+            lineStart = i + 1;
+        }
+        return previous;
+    }
+
+    /**
+     * Visits the lcp-intervals bottom-up. The stack holds the open intervals,
+     * the deepest on top, each with: the length of its common prefix, its
+     * left bound, the number of repeats within a line found in it, the left
+     * context of its occurrences and its first occurrence in the text. An
+     * interval is a maximal repeat if its occurrences are not all preceded by
+     * the same token.
+     */
+    private void findMaximalRepeats(int[] sa, int[] lcp, int[] previousInLine, int threshold) {
+        int[] stackLcp = new int[256];
+        int[] stackLeftBound = new int[256];
+        int[] stackRepeats = new int[256];
+        int[] stackLeftToken = new int[256];
+        int[] stackFirst = new int[256];
+        int top = 0;
+        stackLeftToken[0] = NO_LEFT_TOKEN;
+        stackFirst[0] = Integer.MAX_VALUE;
+
+        for (int k = 1; k <= n; k++) {
+            int h = k < n ? lcp[k] : 0;
+            //what is carried to the parent: first the suffix k - 1 alone, then the intervals closed
+            int leftBound = k - 1;
+            int repeats = 0;
+            int leftToken = leftToken(sa[k - 1]);
+            int first = sa[k - 1];
+            while (h < stackLcp[top]) {
+                stackRepeats[top] += repeats;
+                stackLeftToken[top] = mergeLeftTokens(stackLeftToken[top], leftToken);
+                stackFirst[top] = Math.min(stackFirst[top], first);
+                int nbLines = k - stackLeftBound[top] - stackRepeats[top];
+                if (nbLines >= threshold && stackLeftToken[top] == DIFFERENT_LEFT_TOKENS) {
+                    addPhrase(stackFirst[top], stackLcp[top], nbLines);
+                }
+                leftBound = stackLeftBound[top];
+                repeats = stackRepeats[top];
+                leftToken = stackLeftToken[top];
+                first = stackFirst[top];
+                top--;
+            }
+            if (h > stackLcp[top]) {
+                top++;
+                if (top == stackLcp.length) {
+                    stackLcp = Arrays.copyOf(stackLcp, top * 2);
+                    stackLeftBound = Arrays.copyOf(stackLeftBound, top * 2);
+                    stackRepeats = Arrays.copyOf(stackRepeats, top * 2);
+                    stackLeftToken = Arrays.copyOf(stackLeftToken, top * 2);
+                    stackFirst = Arrays.copyOf(stackFirst, top * 2);
+                }
+                stackLcp[top] = h;
+                stackLeftBound[top] = leftBound;
+                stackRepeats[top] = repeats;
+                stackLeftToken[top] = leftToken;
+                stackFirst[top] = first;
+            } else {
+                stackRepeats[top] += repeats;
+                stackLeftToken[top] = mergeLeftTokens(stackLeftToken[top], leftToken);
+                stackFirst[top] = Math.min(stackFirst[top], first);
+            }
+            //suffix k and the previous one of the same line: the repeat belongs to the deepest interval containing both
+            if (k < n && previousInLine[k] != -1) {
+                int low = 0;
+                int high = top;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (stackLeftBound[middle] <= previousInLine[k]) {
+                        low = middle;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                stackRepeats[low]++;
+            }
+        }
+    }
+
+    //the token before the suffix, or DIFFERENT_LEFT_TOKENS at the start of a line: it can't be extended to the left
+    private int leftToken(int suffix) {
+        return suffix == 0 || text[suffix - 1] < nbLines ? DIFFERENT_LEFT_TOKENS : text[suffix - 1];
+    }
+
+    private static int mergeLeftTokens(int a, int b) {
+        if (a == NO_LEFT_TOKEN || a == b) {
+            return b;
+        }
+        if (b == NO_LEFT_TOKEN) {
+            return a;
+        }
+        return DIFFERENT_LEFT_TOKENS;
+    }
+
+    private void addPhrase(int start, int length, int count) {
+        if (nbPhrases == phraseStarts.length) {
+            phraseStarts = Arrays.copyOf(phraseStarts, nbPhrases * 2);
+            phraseLengths = Arrays.copyOf(phraseLengths, nbPhrases * 2);
+            phraseCounts = Arrays.copyOf(phraseCounts, nbPhrases * 2);
+        }
+        phraseStarts[nbPhrases] = start;
+        phraseLengths[nbPhrases] = length;
+        phraseCounts[nbPhrases] = count;
+        nbPhrases++;
+    }
+
+    //the phrases are added to the dictionary in the order of their first occurrence, the shortest first, so that the ids don't depend on the suffix array
+    private TermCounts addInOrderOfFirstOccurrence() {
+        Integer[] order = new Integer[nbPhrases];
+        for (int i = 0; i < nbPhrases; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (phraseStarts[a] != phraseStarts[b]) {
+                    return phraseStarts[a] < phraseStarts[b] ? -1 : 1;
+                }
+                return phraseLengths[a] - phraseLengths[b];
+            }
+        });
+        TermCounts multisetToReturn = new TermCounts(nbPhrases);
+        int[] tokens = new int[16];
+        for (Integer phrase : order) {
+            int length = phraseLengths[phrase];
+            if (tokens.length < length) {
+                tokens = new int[length];
+            }
+            for (int i = 0; i < length; i++) {
+                tokens[i] = text[phraseStarts[phrase] + i] - nbLines;
+            }
+            multisetToReturn.add(dictionary.termId(tokens, 0, length), phraseCounts[phrase]);
+        }
+        nbPhrases = 0;
+        return multisetToReturn;
+    }
+}
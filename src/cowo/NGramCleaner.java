@@ -5,9 +5,6 @@
 package cowo;
 
 import Utils.Clock;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import java.util.Iterator;
 
 /**
  *
@@ -15,27 +12,23 @@ import java.util.Iterator;
  */
 public class NGramCleaner {
 
-    static HashMultiset<String> cleanIt(Multiset<String> multisetNGramsOriginal) {
+    static TermCounts cleanIt(TermCounts multisetNGramsOriginal, TermDictionary dictionary) {
 
         Clock nGramHousekeeping = new Clock("cleaning ngrams: deleting n-grams less frequent than " + Controller.occurrenceThreshold + " and shorter than " + Controller.minWordLength + " characters.");
 
-        HashMultiset<String> multisetToReturn = HashMultiset.create();
-        Iterator<String> ITsetNGrams = multisetNGramsOriginal.elementSet().iterator();
-        String currNGram;
-        while (ITsetNGrams.hasNext()) {
-            currNGram = ITsetNGrams.next();
-//            if (currNGram.equals("working memory")) {
-//                System.out.println("working memory in the cleaning!");
-//            }
-            if (currNGram.length() >= Controller.minWordLength
-                    & multisetNGramsOriginal.count(currNGram) >= Controller.occurrenceThreshold) {
-                multisetToReturn.add(currNGram, multisetNGramsOriginal.count(currNGram));
+        TermCounts multisetToReturn = new TermCounts();
+        int currNGram;
+        for (int i = 0; i < multisetNGramsOriginal.size(); i++) {
+            currNGram = multisetNGramsOriginal.getTerm(i);
+            if (multisetNGramsOriginal.getCount(i) >= Controller.occurrenceThreshold
+                    && dictionary.charLength(currNGram) >= Controller.minWordLength) {
+                multisetToReturn.add(currNGram, multisetNGramsOriginal.getCount(i));
 //                System.out.println(currNGram + ", " + Main.multisetNGrams.count(currNGram));
             }
         }
 
 
-        nGramHousekeeping.addText("number of words after cleaning: " + multisetToReturn.elementSet().size());
+        nGramHousekeeping.addText("number of words after cleaning: " + multisetToReturn.size());
         nGramHousekeeping.closeAndPrintClock();
         return multisetToReturn;
     }
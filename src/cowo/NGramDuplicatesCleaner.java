@@ -5,125 +5,55 @@
 package cowo;
 
 import Utils.Clock;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import org.apache.commons.lang3.StringUtils;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author C. Levallois
+ *
+ * Removes an n-gram when it is the first or last n-1 words of a longer n-gram
+ * which is at least half as frequent.
+ *
+ * The n-grams are grouped by length in one pass. The two sub n-grams of an
+ * n-gram are then looked up directly in the TermDictionary, the hash of the
+ * last n-1 words being rolled from the hash of the first n-1 words. The
+ * groups of n-grams are split in chunks checked by several threads.
  */
 public class NGramDuplicatesCleaner {
 
-    static HashMultiset<String> removeDuplicates(Multiset<String> setNGrams) {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    static TermCounts removeDuplicates(TermCounts setNGrams, TermDictionary dictionary, StopWordsRemover stopWords) {
 
         Clock deletingDuplicatesTime = new Clock("Deleting n-grams when they are already included in longer n-grams");
 
         deletingDuplicatesTime.addText("Example: it will remove \"United States of \" because \"United States of America\" exists and is quite frequent too");
         deletingDuplicatesTime.printText();
 
-        HashMultiset multisetWords = HashMultiset.create();
-
-
-        Iterator<Multiset.Entry<String>> itFreqList;
-        Set<String> wordsToBeRemoved = new HashSet();
-        Multiset.Entry<String> entry;
-        Multiset.Entry<String> entry2;
-        Iterator<Multiset.Entry<String>> itFreqList2;
-        String currWord;
-        int currWordCount;
-        String currWord2;
-        int currWordCount2;
-        Clock loopOne = new Clock("loop one");
-        Set<String> setCurrentSubNGrams;
-        Iterator<String> setCurrentSubNGramsIterator;
-        String string;
-        String[] termsInBigram;
-        for (int i = Controller.maxgram - 1; i > 0; i--) {
-            System.out.println("looping through ngrams: " + (i + 1));
-            itFreqList = setNGrams.entrySet().iterator();
-            while (itFreqList.hasNext()) {
-                entry = itFreqList.next();
-                currWord = entry.getElement().trim();
-                if (StringUtils.countMatches(currWord, " ") == i) {
-                    //special condition for i = 1 since this is a very simple case that does not need a heavy duty n-gram detection approach
-                    if (i == 1) {
-                        termsInBigram = currWord.split(" ");
-                        for (int j = 0; j <= 1; j++) {
-                            string = termsInBigram[j];
-                            if (!setNGrams.contains(string)) {
-                                if (string.equals("resonance imaging")) {
-                                    System.out.println("resonance imaging not found un setNGrams");
-                                }
-                                continue;
-                            } else if (setNGrams.count(string) < entry.getCount() * 2) {
-                                wordsToBeRemoved.add(string);
-                            }
-                        }
-
-                    } else {
-                        setCurrentSubNGrams = NGramFinder.ngrams(i, currWord);
-                        setCurrentSubNGramsIterator = setCurrentSubNGrams.iterator();
-                        while (setCurrentSubNGramsIterator.hasNext()) {
-                            string = setCurrentSubNGramsIterator.next().trim();
-
-//                            System.out.println("curr entry: " + entry.getElement());
-//                            System.out.println("curr entry count: " + entry.getCount());
-//
-//                            System.out.println("curr Substring: " + string);
-//                            System.out.println("curr Substring count: " + setNGrams.count(string));
-                            if (!setNGrams.contains(string)) {
-
-                                continue;
-                            } else if (setNGrams.count(string) < entry.getCount() * 2) {
-                                wordsToBeRemoved.add(string);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        TermCounts multisetWords = new TermCounts();
 
-//
-//                    itFreqList2 = setNGrams.entrySet().iterator();
-//                    while (itFreqList2.hasNext()) {
-//                        entry2 = itFreqList2.next();
-//                        currWord2 = entry2.getElement();
-//                        currWordCount2 = entry2.getCount();
-//
-//                        if (currWord.contains(currWord2) && !currWord.equals(currWord2)
-//                                // there is a parameter here which determines how frequent should "United States of America" be for "United States of" to be removed        
-//                                && currWordCount * 2 > currWordCount2) {
-//
-//                            //System.out.println(currWord + ", " + currWord2);
-//                            wordsToBeRemoved.add(currWord2);
-//                            //                                                            if ("health care".equals(currWord2)){
-//                            //                System.out.println(currWord);
-//                            //                                }
-//
-//                        }
-//                    }
-//                }
-        System.out.println("number of terms to be removed: " + wordsToBeRemoved.size());
+        Clock loopOne = new Clock("finding the n-grams included in longer n-grams");
+        BitSet wordsToBeRemoved = findIncludedNGrams(setNGrams, dictionary, Math.max(1, Controller.numberOfThreads));
+        System.out.println("number of terms to be removed: " + wordsToBeRemoved.cardinality());
         loopOne.closeAndPrintClock();
 
         Clock loop2 = new Clock("loop2");
-        itFreqList = setNGrams.entrySet().iterator();
-        while (itFreqList.hasNext()) {
+        int currWord;
+        for (int e = 0; e < setNGrams.size(); e++) {
             boolean toRemain;
-            entry = itFreqList.next();
-            currWord = entry.getElement();
-            toRemain = wordsToBeRemoved.add(currWord);
+            currWord = setNGrams.getTerm(e);
+            toRemain = !wordsToBeRemoved.get(currWord);
 
             //This line includes the condition for an important word to remain in the list of words, even if listed with stopwords.
-            if (((toRemain & !Controller.setStopWords.contains(currWord)) | Controller.setKeepWords.contains(currWord)) & currWord.length() >= Controller.minWordLength) {
-                multisetWords.add(entry.getElement(), entry.getCount());
-//                if ("consumers".equals(entry.getElement())){
-//                    System.out.println("added to freqListFiltered: "+entry.getElement());
-//                }
+            if (((toRemain & !stopWords.isStopWord(currWord)) | stopWords.isKeepWord(currWord)) & dictionary.charLength(currWord) >= Controller.minWordLength) {
+                multisetWords.add(currWord, setNGrams.getCount(e));
 
             }
 
@@ -133,10 +63,106 @@ public class NGramDuplicatesCleaner {
 
 
 
-        deletingDuplicatesTime.addText("Number of words after removing redundant n-grams: " + multisetWords.elementSet().size());
+        deletingDuplicatesTime.addText("Number of words after removing redundant n-grams: " + multisetWords.size());
         deletingDuplicatesTime.closeAndPrintClock();
 
         return multisetWords;
 
     }
+
+    //the ids of the n-grams to remove
+    private static BitSet findIncludedNGrams(TermCounts setNGrams, TermDictionary dictionary, int nbThreads) {
+        //positions of the n-grams in setNGrams, grouped by length (counting sort)
+        int maxLength = 0;
+        for (int e = 0; e < setNGrams.size(); e++) {
+            maxLength = Math.max(maxLength, dictionary.termLength(setNGrams.getTerm(e)));
+        }
+        int[] groupStarts = new int[maxLength + 2];
+        for (int e = 0; e < setNGrams.size(); e++) {
+            groupStarts[dictionary.termLength(setNGrams.getTerm(e)) + 1]++;
+        }
+        for (int length = 1; length < groupStarts.length; length++) {
+            groupStarts[length] += groupStarts[length - 1];
+        }
+        int[] positions = new int[setNGrams.size()];
+        int[] next = groupStarts.clone();
+        for (int e = 0; e < setNGrams.size(); e++) {
+            positions[next[dictionary.termLength(setNGrams.getTerm(e))]++] = e;
+        }
+
+        //single words have no sub n-grams
+        int nbToCheck = setNGrams.size() - groupStarts[2];
+        int chunkSize = Math.max(1024, (nbToCheck + nbThreads * CHUNKS_PER_THREAD - 1) / (nbThreads * CHUNKS_PER_THREAD));
+        List<IncludedNGramsFinder> finders = new ArrayList();
+        for (int length = 2; length <= maxLength; length++) {
+            for (int from = groupStarts[length]; from < groupStarts[length + 1]; from += chunkSize) {
+                finders.add(new IncludedNGramsFinder(setNGrams, dictionary, positions, from, Math.min(from + chunkSize, groupStarts[length + 1]), length));
+            }
+        }
+
+        BitSet wordsToBeRemoved = new BitSet();
+        if (nbThreads == 1 || finders.size() <= 1) {
+            for (IncludedNGramsFinder finder : finders) {
+                wordsToBeRemoved.or(finder.call());
+            }
+            return wordsToBeRemoved;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            for (Future<BitSet> future : pool.invokeAll(finders)) {
+                wordsToBeRemoved.or(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return wordsToBeRemoved;
+    }
+
+    //checks the n-grams of the same length found at positions[from] to positions[to - 1]
+    private static class IncludedNGramsFinder implements Callable<BitSet> {
+
+        private final TermCounts setNGrams;
+        private final TermDictionary dictionary;
+        private final int[] positions;
+        private final int from;
+        private final int to;
+        private final int length;
+
+        IncludedNGramsFinder(TermCounts setNGrams, TermDictionary dictionary, int[] positions, int from, int to, int length) {
+            this.setNGrams = setNGrams;
+            this.dictionary = dictionary;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.length = length;
+        }
+
+        @Override
+        public BitSet call() {
+            BitSet wordsToBeRemoved = new BitSet();
+            int[] tokens = new int[length];
+            long power = TermDictionary.hashPower(length - 1);
+            for (int i = from; i < to; i++) {
+                int currWordCount = setNGrams.getCount(positions[i]);
+                dictionary.tokensOfTerm(setNGrams.getTerm(positions[i]), tokens);
+                //the two sub n-grams: the first length - 1 words and the last length - 1 words
+                long firstWordsHash = TermDictionary.hash(tokens, 0, length - 1);
+                check(dictionary.findTerm(tokens, 0, length - 1, firstWordsHash), currWordCount, wordsToBeRemoved);
+                long lastWordsHash = TermDictionary.rollHash(firstWordsHash, tokens[0], tokens[length - 1], power);
+                check(dictionary.findTerm(tokens, 1, length - 1, lastWordsHash), currWordCount, wordsToBeRemoved);
+            }
+            return wordsToBeRemoved;
+        }
+
+        private void check(int subNGram, int currWordCount, BitSet wordsToBeRemoved) {
+            if (subNGram != -1 && setNGrams.contains(subNGram) && setNGrams.count(subNGram) < currWordCount * 2) {
+                wordsToBeRemoved.set(subNGram);
+            }
+        }
+    }
 }
@@ -5,83 +5,538 @@
 package cowo;
 
 import Utils.Clock;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author C. Levallois adapted from
  * http://stackoverflow.com/questions/3656762/n-gram-generation-from-a-sentence
+ *
+ * An NGramFinder keeps no static state: several analyses can run at the same
+ * time, each with its own TermDictionary.
+ *
+ * With several threads, the lines are split in chunks. Each chunk is counted
+ * by a worker in its own TermDictionary (the token ids are shared, the term
+ * ids are local), then the counts of the chunks are added to the
+ * TermDictionary of the analysis, in the order of the chunks. The terms and
+ * their counts, and the ids given to the terms, are the same as with one
+ * thread.
+ *
+ * runItPruned counts level by level (Apriori): the n-grams are only counted
+ * when the two (n-1)-grams they contain are frequent enough. An n-gram is
+ * counted once per line, so it can't be more frequent than the (n-1)-grams it
+ * contains: the n-grams reaching the threshold are the same as with runIt,
+ * but the rare n-grams, which are most of them, are never counted.
+ *
+ * runItApproximate counts in a fixed amount of memory: all n-grams are
+ * counted approximately in a CountMinSketch, and exact counters are only kept
+ * for the heavy hitters, the n-grams whose estimated count reaches the
+ * threshold.
+ *
+ * With a StopWordsFilter (setStopWordsFilter), the n-grams which would be
+ * removed with the stopwords are not counted (except by runItPruned, whose
+ * pruning needs the counts of all the (n-1)-grams).
  */
 public class NGramFinder {
 
-    private static HashMultiset<String> freqSetN = HashMultiset.create();
-    private static String[] words;
-//    public static HashMultiset<String> multisetNGrams = HashMultiset.create();
-    private static HashSet<String> setUniqueNGramsPerLine;
-    private static HashMultiset<String> setAllNGramsPerLine;
-    private static HashMultiset<String> multisetToReturn;
+    //max number of lines of a chunk, so that chunks waiting for a thread don't fill the memory
+    private static final int MAX_LINES_PER_CHUNK = 8192;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private final TermDictionary dictionary;
+    private final int maxgram;
+    //approximate counting
+    private CountMinSketch sketch;
+    //hashes of the n-grams which reached the threshold when the table of heavy hitters was full
+    private HashesSet refusedHeavyHitters;
+    private int maxHeavyHitters;
+    private StopWordsFilter stopWordsFilter;
+
+    public NGramFinder(TermDictionary dictionary, int maxgram) {
+        this.dictionary = dictionary;
+        this.maxgram = maxgram;
+    }
+
+    /**
+     * The n-grams rejected by the filter are not counted, null to count all
+     * the n-grams.
+     */
+    public void setStopWordsFilter(StopWordsFilter stopWordsFilter) {
+        this.stopWordsFilter = stopWordsFilter;
+    }
 
-    public static HashMultiset<String> runIt(Map<Integer, String> mapofLines) {
+    /**
+     * Counts all the n-grams (n from 1 to maxgram) of the lines, an n-gram
+     * being counted once per line where it appears. The lines are read from
+     * the TokenStore, where they have already been split in tokens.
+     */
+    public TermCounts runIt(TokenStore lines, int nbThreads) throws IOException, InterruptedException {
         Clock extractingNGramsPerLine = new Clock("extracting ngrams");
-        multisetToReturn = HashMultiset.create();
+        TermCounts multisetToReturn;
+        TokenStore.Reader reader = lines.reader();
 
-        for (Integer lineNumber : mapofLines.keySet()) {
+        if (nbThreads <= 1) {
+            ChunkCounter counter = new ChunkCounter(dictionary, null);
+            while (reader.next()) {
+                counter.addLine(reader.getTokens(), 0, reader.getNbTokens());
+            }
+            multisetToReturn = counter.counts;
+        } else {
+            multisetToReturn = new TermCounts();
+            int linesPerChunk = (lines.getNbLines() + nbThreads * CHUNKS_PER_THREAD - 1) / (nbThreads * CHUNKS_PER_THREAD);
+            linesPerChunk = Math.max(1, Math.min(MAX_LINES_PER_CHUNK, linesPerChunk));
+            ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+            //the counts are merged in the order of the chunks. At most 2 chunks per thread are waiting or running.
+            ArrayDeque<Future<ChunkCounter>> counters = new ArrayDeque();
+            try {
+                int[] chunk;
+                while ((chunk = reader.nextLines(linesPerChunk)) != null) {
+                    if (counters.size() >= nbThreads * 2) {
+                        merge(counters.poll().get(), multisetToReturn);
+                    }
+                    counters.add(pool.submit(new ChunkCounter(new TermDictionary(), chunk)));
+                }
+                while (!counters.isEmpty()) {
+                    merge(counters.poll().get(), multisetToReturn);
+                }
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        extractingNGramsPerLine.addText("number of unique terms after nGram detection: " + multisetToReturn.size());
+        extractingNGramsPerLine.closeAndPrintClock();
+        return multisetToReturn;
 
-            setAllNGramsPerLine = HashMultiset.create();
-            setAllNGramsPerLine.addAll(run(mapofLines.get(lineNumber), Controller.maxgram));
-//            if (mapofLines.get(lineNumber).contains("working memory")) {
-//                System.out.println("alert!");
-//            }
+    }
 
+    /**
+     * Counts the n-grams (n from 1 to maxgram) appearing in at least
+     * threshold lines, in maxgram passes over the lines. The result is the
+     * same as runIt followed by the removal of the n-grams counted less than
+     * threshold times, and the terms come in the same order.
+     */
+    public TermCounts runItPruned(TokenStore lines, int threshold) throws IOException {
+        Clock extractingNGramsPerLine = new Clock("extracting ngrams, pruned below " + threshold + " occurrences");
+        //the candidates of all levels, counted with local term ids
+        TermDictionary candidates = new TermDictionary();
+        TermCounts counts = new TermCounts();
+        //for each candidate: its first occurrence, as (line << 32) | ((n - 1) << 27) | position in the line
+        //(lines are assumed to have less than 2^27 tokens)
+        long[] firstOccurrence = new long[1024];
+        int[] lastLineOfTerm = new int[1024];
+        //frequent candidates of the previous level, at each position of the line
+        boolean[] frequentAt = new boolean[256];
+        int nbCandidates = 0;
 
-            //takes care of the binary counting. For the Alchemy API case, this happens in the AlchemyAPI extractor class
-            if (Controller.binary) {
-                setUniqueNGramsPerLine = new HashSet();
-                setUniqueNGramsPerLine.addAll(setAllNGramsPerLine);
-                multisetToReturn.addAll(setUniqueNGramsPerLine);
-            } else {
-                multisetToReturn.addAll(setAllNGramsPerLine);
+        for (int n = 1; n <= maxgram; n++) {
+            long power = TermDictionary.hashPower(n);
+            long previousPower = TermDictionary.hashPower(n - 1);
+            int lineIndex = 0;
+            TokenStore.Reader reader = lines.reader();
+            while (reader.next()) {
+                lineIndex++;
+                int[] lineTokens = reader.getTokens();
+                int nbTokens = reader.getNbTokens();
+                if (nbTokens < n) {
+                    continue;
+                }
+                if (frequentAt.length < nbTokens) {
+                    frequentAt = new boolean[nbTokens * 2];
+                }
+                if (n > 1) {
+                    //which (n-1)-grams of the line are frequent
+                    long hash = TermDictionary.hash(lineTokens, 0, n - 1);
+                    for (int i = 0; i < nbTokens - n + 2; i++) {
+                        if (i > 0) {
+                            hash = TermDictionary.rollHash(hash, lineTokens[i - 1], lineTokens[i + n - 2], previousPower);
+                        }
+                        int term = candidates.findTerm(lineTokens, i, n - 1, hash);
+                        frequentAt[i] = term != -1 && counts.count(term) >= threshold;
+                    }
+                }
+                long hash = TermDictionary.hash(lineTokens, 0, n);
+                for (int i = 0; i < nbTokens - n + 1; i++) {
+                    if (i > 0) {
+                        hash = TermDictionary.rollHash(hash, lineTokens[i - 1], lineTokens[i + n - 1], power);
+                    }
+                    if (n > 1 && !(frequentAt[i] && frequentAt[i + 1])) {
+                        continue;
+                    }
+                    int term = candidates.termId(lineTokens, i, n, hash);
+                    if (term == nbCandidates) {
+                        nbCandidates++;
+                        if (term == firstOccurrence.length) {
+                            firstOccurrence = Arrays.copyOf(firstOccurrence, term * 2);
+                            lastLineOfTerm = Arrays.copyOf(lastLineOfTerm, term * 2);
+                        }
+                        firstOccurrence[term] = ((long) lineIndex << 32) | ((long) (n - 1) << 27) | i;
+                    }
+                    if (lastLineOfTerm[term] != lineIndex) {
+                        lastLineOfTerm[term] = lineIndex;
+                        counts.add(term, 1);
+                    }
+                }
             }
-
         }
-        extractingNGramsPerLine.addText("number of unique terms after nGram detection: " + multisetToReturn.elementSet().size());
+
+        TermCounts multisetToReturn = addInOrderOfFirstOccurrence(candidates, counts, firstOccurrence, threshold);
+        extractingNGramsPerLine.addText("number of n-grams counted: " + counts.size());
+        extractingNGramsPerLine.addText("number of unique terms after nGram detection: " + multisetToReturn.size());
         extractingNGramsPerLine.closeAndPrintClock();
         return multisetToReturn;
-
     }
 
-    public static Set<String> ngrams(int n, String str) {
+    /**
+     * Counts the n-grams (n from 1 to maxgram) appearing in at least
+     * threshold lines, with at most maxNGramsInMemory distinct n-grams in
+     * memory. When this number is reached, the counts are written to a
+     * temporary file (a run, see NGramRuns) and counting starts again from
+     * empty; the runs are merged at the end. The result is the same as runIt
+     * followed by the removal of the n-grams counted less than threshold
+     * times, and the terms come in the same order.
+     */
+    public TermCounts runItOutOfCore(TokenStore lines, int threshold, int maxNGramsInMemory) throws IOException {
+        Clock extractingNGramsPerLine = new Clock("extracting ngrams, with at most " + maxNGramsInMemory + " distinct n-grams in memory");
+        NGramRuns runs = new NGramRuns();
+        TermDictionary terms = new TermDictionary();
+        TermCounts counts = new TermCounts();
+        //for each term: its first occurrence, as (line << 32) | ((n - 1) << 27) | position in the line
+        long[] firstOccurrence = new long[1024];
+        int[] lastLineOfTerm = new int[1024];
+        int lineIndex = 0;
+        int[] words = new int[maxgram];
+
+        TokenStore.Reader reader = lines.reader();
+        while (reader.next()) {
+            lineIndex++;
+            int[] lineTokens = reader.getTokens();
+            int nbTokens = reader.getNbTokens();
+            for (int n = 1; n <= maxgram && n <= nbTokens; n++) {
+                long power = TermDictionary.hashPower(n);
+                long hash = TermDictionary.hash(lineTokens, 0, n);
+                for (int i = 0; i < nbTokens - n + 1; i++) {
+                    if (i > 0) {
+                        hash = TermDictionary.rollHash(hash, lineTokens[i - 1], lineTokens[i + n - 1], power);
+                    }
+                    if (stopWordsFilter != null && !stopWordsFilter.accept(lineTokens, i, n, words)) {
+                        continue;
+                    }
+                    int nbTerms = terms.getNbTerms();
+                    int term = terms.termId(lineTokens, i, n, hash);
+                    if (term == nbTerms) {
+                        if (term == firstOccurrence.length) {
+                            firstOccurrence = Arrays.copyOf(firstOccurrence, term * 2);
+                            lastLineOfTerm = Arrays.copyOf(lastLineOfTerm, term * 2);
+                        }
+                        firstOccurrence[term] = ((long) lineIndex << 32) | ((long) (n - 1) << 27) | i;
+                        lastLineOfTerm[term] = 0;
+                    }
+                    if (lastLineOfTerm[term] != lineIndex) {
+                        lastLineOfTerm[term] = lineIndex;
+                        counts.add(term, 1);
+                    }
+                }
+            }
+            if (terms.getNbTerms() >= maxNGramsInMemory) {
+                runs.spill(terms, counts, firstOccurrence);
+                terms = new TermDictionary();
+                counts = new TermCounts();
+            }
+        }
+
+        TermCounts multisetToReturn;
+        if (runs.getNbRuns() == 0) {
+            multisetToReturn = addInOrderOfFirstOccurrence(terms, counts, firstOccurrence, threshold);
+        } else {
+            if (counts.size() > 0) {
+                runs.spill(terms, counts, firstOccurrence);
+            }
+            extractingNGramsPerLine.addText("number of runs written to disk: " + runs.getNbRuns());
+            //the frequent n-grams of the runs
+            final TermDictionary frequentTerms = new TermDictionary();
+            final TermCounts frequentCounts = new TermCounts();
+            final List<Long> frequentFirstOccurrences = new ArrayList();
+            runs.merge(threshold, new NGramRuns.Consumer() {
+                @Override
+                public void accept(int[] tokens, int length, int count, long firstOccurrence) {
+                    frequentCounts.add(frequentTerms.termId(tokens, 0, length), count);
+                    frequentFirstOccurrences.add(firstOccurrence);
+                }
+            });
+            long[] firstOccurrenceOfFrequent = new long[frequentFirstOccurrences.size()];
+            for (int i = 0; i < firstOccurrenceOfFrequent.length; i++) {
+                firstOccurrenceOfFrequent[i] = frequentFirstOccurrences.get(i);
+            }
+            multisetToReturn = addInOrderOfFirstOccurrence(frequentTerms, frequentCounts, firstOccurrenceOfFrequent, threshold);
+        }
+        extractingNGramsPerLine.addText("number of unique terms after nGram detection: " + multisetToReturn.size());
+        extractingNGramsPerLine.closeAndPrintClock();
+        return multisetToReturn;
+    }
 
-        Set<String> setToReturn = new HashSet();
-        words = str.split(Controller.wordSeparator);
-        for (int i = 0; i < words.length - n + 1; i++) {
-            setToReturn.add(concat(words, i, i + n, n));
+    /**
+     * Adds to the dictionary the terms of a local TermDictionary counted at
+     * least threshold times, in the order in which runIt finds them: by line,
+     * then by n, then by position.
+     */
+    private TermCounts addInOrderOfFirstOccurrence(TermDictionary terms, TermCounts counts, final long[] firstOccurrence, int threshold) {
+        List<Integer> frequentTerms = new ArrayList();
+        for (int i = 0; i < counts.size(); i++) {
+            if (counts.getCount(i) >= threshold) {
+                frequentTerms.add(counts.getTerm(i));
+            }
         }
+        Collections.sort(frequentTerms, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer termA, Integer termB) {
+                long a = firstOccurrence[termA];
+                long b = firstOccurrence[termB];
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
 
-        return setToReturn;
+        TermCounts multisetToReturn = new TermCounts(frequentTerms.size());
+        int[] tokens = new int[maxgram];
+        for (int term : frequentTerms) {
+            int length = terms.tokensOfTerm(term, tokens);
+            multisetToReturn.add(dictionary.termId(tokens, 0, length), counts.count(term));
+        }
+        return multisetToReturn;
+    }
 
+    /**
+     * Counts the n-grams (n from 1 to maxgram) in the sketch, once per line
+     * where they appear. When the estimated count of an n-gram reaches
+     * threshold, it becomes a heavy hitter: it is added to the dictionary
+     * with its estimated count, and then counted exactly. At most
+     * maxHeavyHitters n-grams are tracked; the count of a heavy hitter is
+     * overestimated by at most sketch.getMaxError(), with probability 1 -
+     * sketch.getDelta(). The n-grams reaching the threshold when the table is
+     * full are not in the result: their number is in the report.
+     */
+    public TermCounts runItApproximate(TokenStore lines, int threshold, CountMinSketch sketch, int maxHeavyHitters) throws IOException {
+        Clock extractingNGramsPerLine = new Clock("extracting ngrams, approximate counts below " + threshold + " occurrences");
+        this.sketch = sketch;
+        this.maxHeavyHitters = maxHeavyHitters;
+        refusedHeavyHitters = new HashesSet();
+        TermCounts heavyHitters = new TermCounts();
+        LineHashes countedInLine = new LineHashes();
+        int[] words = new int[maxgram];
 
+        TokenStore.Reader reader = lines.reader();
+        while (reader.next()) {
+            int[] lineTokens = reader.getTokens();
+            int nbTokens = reader.getNbTokens();
+            countedInLine.newLine(nbTokens * maxgram);
+            for (int n = 1; n <= maxgram && n <= nbTokens; n++) {
+                long power = TermDictionary.hashPower(n);
+                long hash = TermDictionary.hash(lineTokens, 0, n);
+                for (int i = 0; i < nbTokens - n + 1; i++) {
+                    if (i > 0) {
+                        hash = TermDictionary.rollHash(hash, lineTokens[i - 1], lineTokens[i + n - 1], power);
+                    }
+                    if (stopWordsFilter != null && !stopWordsFilter.accept(lineTokens, i, n, words)) {
+                        continue;
+                    }
+                    //n-grams are counted once per line
+                    if (!countedInLine.add(hash)) {
+                        continue;
+                    }
+                    int term = dictionary.findTerm(lineTokens, i, n, hash);
+                    if (term != -1 && heavyHitters.contains(term)) {
+                        heavyHitters.add(term, 1);
+                        continue;
+                    }
+                    int estimate = sketch.add(hash);
+                    if (estimate >= threshold) {
+                        if (heavyHitters.size() < maxHeavyHitters) {
+                            heavyHitters.add(dictionary.termId(lineTokens, i, n, hash), estimate);
+                        } else {
+                            refusedHeavyHitters.add(hash);
+                        }
+                    }
+                }
+            }
+        }
+        extractingNGramsPerLine.addText("count-min sketch of " + sketch.getDepth() + " x " + sketch.getWidth() + " counters, max error " + Math.round(sketch.getMaxError()));
+        extractingNGramsPerLine.addText("number of unique terms after nGram detection: " + heavyHitters.size());
+        extractingNGramsPerLine.closeAndPrintClock();
+        return heavyHitters;
     }
 
-    public static String concat(String[] words, int start, int end, int ngram) {
+    /**
+     * The error bounds of the last call to runItApproximate, for the report.
+     */
+    public String getApproximationReport() {
+        if (sketch == null) {
+            return "";
+        }
         StringBuilder sb = new StringBuilder();
-        for (int i = start; i < end; i++) {
-            sb.append(i > start ? " " : "").append(words[i]);
+        sb.append("Approximate counting of n-grams with a Count-Min Sketch of ").append(sketch.getDepth()).append(" x ").append(sketch.getWidth()).append(" counters.\n");
+        sb.append("Counts are never underestimated. With probability ").append(1 - sketch.getDelta()).append(", a count is overestimated by at most ").append(sketch.getEpsilon()).append(" x ").append(sketch.getTotal()).append(" (number of n-grams counted) = ").append(Math.round(sketch.getMaxError())).append(".\n");
+        if (refusedHeavyHitters.size() > 0) {
+            sb.append("The table of exact counts was full (").append(maxHeavyHitters).append(" n-grams): ").append(refusedHeavyHitters.size()).append(" other n-grams reached the threshold but could not be tracked, they are missing from the results.\n");
         }
         return sb.toString();
     }
 
-    public static Multiset<String> run(String toBeParsed, int nGram) {
-        freqSetN = HashMultiset.create();
+    //adds the counts of a chunk, counted with the local term ids of its worker
+    private void merge(ChunkCounter counter, TermCounts multisetToReturn) {
+        int[] tokens = new int[maxgram];
+        for (int i = 0; i < counter.counts.size(); i++) {
+            int localTerm = counter.counts.getTerm(i);
+            int length = counter.terms.tokensOfTerm(localTerm, tokens);
+            multisetToReturn.add(dictionary.termId(tokens, 0, length), counter.counts.getCount(i));
+        }
+    }
+
+    /**
+     * Counts the n-grams of lines in a TermDictionary, each n-gram once per
+     * line.
+     */
+    private class ChunkCounter implements Callable<ChunkCounter> {
+
+        private final TermDictionary terms;
+        //lines of the TokenStore: number of tokens of the line, then its tokens
+        private final int[] chunk;
+        private final TermCounts counts = new TermCounts();
+        //for each term, the last line where it was counted
+        private int[] lastLineOfTerm;
+        private int lineIndex;
+        private final int[] words = new int[maxgram];
+
+        ChunkCounter(TermDictionary terms, int[] chunk) {
+            this.terms = terms;
+            this.chunk = chunk;
+            lastLineOfTerm = new int[Math.max(1024, terms.getNbTerms())];
+        }
+
+        @Override
+        public ChunkCounter call() {
+            int position = 0;
+            while (position < chunk.length) {
+                int nbTokens = chunk[position];
+                addLine(chunk, position + 1, nbTokens);
+                position += nbTokens + 1;
+            }
+            return this;
+        }
+
+        void addLine(int[] lineTokens, int from, int nbTokens) {
+            lineIndex++;
+            //takes care of the binary counting: n-grams are counted once per line.
+            //For the Alchemy API case, this happens in the AlchemyAPI extractor class
+            //the hash of each window of n tokens is computed from the hash of the previous window
+            for (int n = 1; n <= maxgram && n <= nbTokens; n++) {
+                long power = TermDictionary.hashPower(n);
+                long hash = TermDictionary.hash(lineTokens, from, n);
+                for (int i = from; i < from + nbTokens - n + 1; i++) {
+                    if (i > from) {
+                        hash = TermDictionary.rollHash(hash, lineTokens[i - 1], lineTokens[i + n - 1], power);
+                    }
+                    if (stopWordsFilter != null && !stopWordsFilter.accept(lineTokens, i, n, words)) {
+                        continue;
+                    }
+                    int term = terms.termId(lineTokens, i, n, hash);
+                    if (term >= lastLineOfTerm.length) {
+                        lastLineOfTerm = Arrays.copyOf(lastLineOfTerm, Math.max(lastLineOfTerm.length * 2, term + 1));
+                    }
+                    if (lastLineOfTerm[term] != lineIndex) {
+                        lastLineOfTerm[term] = lineIndex;
+                        counts.add(term, 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set of the hashes of the n-grams already counted in the current line.
+     * A slot belongs to the set if it was filled during the current line, so
+     * that the set is emptied in constant time.
+     */
+    private static class LineHashes {
+
+        private long[] hashes = new long[1024];
+        private int[] lineOfSlot = new int[1024];
+        private int line;
+
+        void newLine(int maxSize) {
+            line++;
+            if (maxSize * 2 > hashes.length) {
+                int capacity = Integer.highestOneBit(maxSize * 4 - 1);
+                hashes = new long[capacity];
+                lineOfSlot = new int[capacity];
+                line = 1;
+            }
+        }
+
+        //false if the hash is already in the set
+        boolean add(long hash) {
+            int mask = hashes.length - 1;
+            int slot = TermDictionary.mix(hash) & mask;
+            while (lineOfSlot[slot] == line) {
+                if (hashes[slot] == hash) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            lineOfSlot[slot] = line;
+            hashes[slot] = hash;
+            return true;
+        }
+    }
+
+    /**
+     * A set of hashes of n-grams, growing as needed: open addressing, each
+     * hash stored once.
+     */
+    private static class HashesSet {
+
+        private long[] hashes = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        void add(long hash) {
+            if (size * 2 >= hashes.length) {
+                long[] oldHashes = hashes;
+                boolean[] oldUsed = used;
+                hashes = new long[oldHashes.length * 2];
+                used = new boolean[oldHashes.length * 2];
+                size = 0;
+                for (int slot = 0; slot < oldHashes.length; slot++) {
+                    if (oldUsed[slot]) {
+                        add(oldHashes[slot]);
+                    }
+                }
+            }
+            int mask = hashes.length - 1;
+            int slot = TermDictionary.mix(hash) & mask;
+            while (used[slot]) {
+                if (hashes[slot] == hash) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            hashes[slot] = hash;
+            size++;
+        }
 
-        for (int n = 1; n <= nGram; n++) {
-            freqSetN.addAll(ngrams(n, toBeParsed));
+        int size() {
+            return size;
         }
-        //System.out.println(freqList.get(i));
-        return freqSetN;
     }
 }
@@ -0,0 +1,255 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Counts of n-grams written to temporary files (runs) when they don't fit in
+ * memory, and merged back at the end.
+ *
+ * A run is written sorted on the tokens of the n-grams, each n-gram as: its
+ * number of tokens, its tokens, its count, its first occurrence in the text.
+ * The runs are then merged like in a merge sort (k-way merge): the n-grams
+ * come out of all runs in the order of their tokens, so that the counts of
+ * the same n-gram in different runs are added up while reading each run only
+ * once.
+ */
+public class NGramRuns {
+
+    /**
+     * Receives the n-grams of the merge.
+     */
+    public interface Consumer {
+
+        void accept(int[] tokens, int length, int count, long firstOccurrence);
+    }
+    //max number of runs read at the same time: with more runs, groups of runs are first merged in bigger runs
+    private static final int MAX_FAN_IN = 128;
+    private final List<File> runs = new ArrayList();
+
+    public int getNbRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Writes a run with the counts of the terms of a TermDictionary.
+     *
+     * @param firstOccurrence first occurrence of each term, by term id
+     */
+    public void spill(final TermDictionary terms, TermCounts counts, long[] firstOccurrence) throws IOException {
+        Integer[] sorted = new Integer[counts.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        final TermCounts countsOfTerms = counts;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer positionA, Integer positionB) {
+                return compareTerms(terms, countsOfTerms.getTerm(positionA), countsOfTerms.getTerm(positionB));
+            }
+        });
+
+        RunWriter writer = new RunWriter();
+        try {
+            int[] tokens = new int[16];
+            for (Integer position : sorted) {
+                int term = counts.getTerm(position);
+                if (tokens.length < terms.termLength(term)) {
+                    tokens = new int[terms.termLength(term)];
+                }
+                int length = terms.tokensOfTerm(term, tokens);
+                writer.accept(tokens, length, counts.getCount(position), firstOccurrence[term]);
+            }
+        } finally {
+            writer.close();
+        }
+        runs.add(writer.run);
+    }
+
+    /**
+     * Merges the runs, and passes each n-gram with its total count and its
+     * first occurrence to the consumer, if its total count reaches
+     * threshold. The runs are deleted.
+     */
+    public void merge(int threshold, Consumer consumer) throws IOException {
+        try {
+            while (runs.size() > MAX_FAN_IN) {
+                List<File> group = new ArrayList(runs.subList(0, MAX_FAN_IN));
+                runs.subList(0, MAX_FAN_IN).clear();
+                RunWriter writer = new RunWriter();
+                try {
+                    merge(group, 0, writer);
+                } finally {
+                    writer.close();
+                }
+                runs.add(writer.run);
+            }
+            merge(runs, threshold, consumer);
+        } finally {
+            runs.clear();
+        }
+    }
+
+    //merges the runs, which are deleted
+    private static void merge(List<File> runs, int threshold, Consumer consumer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue(Math.max(1, runs.size()));
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            int[] tokens = new int[16];
+            while (!queue.isEmpty()) {
+                RunReader first = queue.poll();
+                int length = first.length;
+                if (tokens.length < length) {
+                    tokens = new int[length];
+                }
+                System.arraycopy(first.tokens, 0, tokens, 0, length);
+                long count = first.count;
+                long firstOccurrence = first.firstOccurrence;
+                advance(first, queue);
+                //the same n-gram in the other runs
+                while (!queue.isEmpty() && compare(queue.peek().tokens, queue.peek().length, tokens, length) == 0) {
+                    RunReader same = queue.poll();
+                    count += same.count;
+                    firstOccurrence = Math.min(firstOccurrence, same.firstOccurrence);
+                    advance(same, queue);
+                }
+                if (count >= threshold) {
+                    consumer.accept(tokens, length, (int) Math.min(Integer.MAX_VALUE, count), firstOccurrence);
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    private static void advance(RunReader reader, PriorityQueue<RunReader> queue) throws IOException {
+        if (reader.next()) {
+            queue.add(reader);
+        } else {
+            reader.close();
+        }
+    }
+
+    private static int compareTerms(TermDictionary terms, int termA, int termB) {
+        int lengthA = terms.termLength(termA);
+        int lengthB = terms.termLength(termB);
+        for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+            int tokenA = terms.tokenOfTerm(termA, i);
+            int tokenB = terms.tokenOfTerm(termB, i);
+            if (tokenA != tokenB) {
+                return tokenA < tokenB ? -1 : 1;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    //order of the runs: tokens compared one by one, a shorter n-gram first when it is the start of the other
+    private static int compare(int[] tokensA, int lengthA, int[] tokensB, int lengthB) {
+        for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+            if (tokensA[i] != tokensB[i]) {
+                return tokensA[i] < tokensB[i] ? -1 : 1;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    //writes a new run
+    private static class RunWriter implements Consumer {
+
+        final File run;
+        private final DataOutputStream out;
+
+        RunWriter() throws IOException {
+            run = File.createTempFile("cowo", ".ngrams");
+            run.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+        }
+
+        @Override
+        public void accept(int[] tokens, int length, int count, long firstOccurrence) {
+            try {
+                out.writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    out.writeInt(tokens[i]);
+                }
+                out.writeInt(count);
+                out.writeLong(firstOccurrence);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream in;
+        int[] tokens = new int[16];
+        int length;
+        int count;
+        long firstOccurrence;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+        }
+
+        //reads the next n-gram of the run, false at the end of the run
+        boolean next() throws IOException {
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            if (tokens.length < length) {
+                tokens = new int[length];
+            }
+            for (int i = 0; i < length; i++) {
+                tokens[i] = in.readInt();
+            }
+            count = in.readInt();
+            firstOccurrence = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return compare(tokens, length, other.tokens, other.length);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Weights of the edges between terms. An edge is an unordered pair of term
+ * ids, packed in a long (smaller id in the high 32 bits), so that no String is
+ * built or parsed for an edge. Edges are kept in the order in which they were
+ * first added, with an open addressing table to find the position of an edge.
+ */
+public class PairCounts {
+
+    private long[] keys;
+    private int[] weights;
+    private int size;
+    //position of the edge + 1, 0 for an empty slot
+    private int[] slots;
+
+    public PairCounts() {
+        this(16);
+    }
+
+    public PairCounts(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        keys = new long[capacity];
+        weights = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    public static long key(int termA, int termB) {
+        if (termA > termB) {
+            int t = termA;
+            termA = termB;
+            termB = t;
+        }
+        return ((long) termA << 32) | (termB & 0xFFFFFFFFL);
+    }
+
+    public void add(int termA, int termB, int weight) {
+        add(key(termA, termB), weight);
+    }
+
+    public void add(long key, int weight) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (keys[position] == key) {
+                weights[position] += weight;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        keys[size] = key;
+        weights[size] = weight;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    public void addAll(PairCounts other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.keys[i], other.weights[i]);
+        }
+    }
+
+    public boolean contains(int termA, int termB) {
+        return position(key(termA, termB)) != -1;
+    }
+
+    public int weight(int termA, int termB) {
+        int position = position(key(termA, termB));
+        return position == -1 ? 0 : weights[position];
+    }
+
+    //number of edges
+    public int size() {
+        return size;
+    }
+
+    //smaller term id of the edge at this position (from 0 to size() - 1)
+    public int getLeft(int position) {
+        return (int) (keys[position] >>> 32);
+    }
+
+    //larger term id of the edge at this position
+    public int getRight(int position) {
+        return (int) keys[position];
+    }
+
+    public int getWeight(int position) {
+        return weights[position];
+    }
+
+    private int position(long key) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (keys[position] == key) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
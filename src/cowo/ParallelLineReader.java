@@ -0,0 +1,209 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Reads the lines of a UTF-8 text file, with several threads. The file is
+ * cut in chunks of about chunkSize bytes, each chunk ending with a line
+ * break. Each chunk is memory-mapped, decoded and split in lines by a
+ * thread of a pool. The lines are handed back chunk by chunk, in the order of
+ * the file. New chunks are only read when the chunks read but not handed back
+ * yet are less than maxBytesInProgress bytes of the file: the memory used
+ * doesn't depend on the number of threads (decoded in lines, a chunk takes
+ * about 4 times its size in bytes).
+ *
+ * Lines end with "\n", "\r\n" or "\r", as with BufferedReader.readLine().
+ * Blank lines (lines without any letter, digit or "_") are skipped, or
+ * handed back as empty strings with setKeepBlankLines (to find the ends of
+ * paragraphs).
+ */
+public class ParallelLineReader {
+
+    private static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ExecutorService pool;
+    private final int chunkSize;
+    private final long maxBytesInProgress;
+    private final ArrayDeque<Future<List<String>>> chunksInProgress = new ArrayDeque();
+    //size in bytes of each chunk in progress, and their total
+    private final ArrayDeque<Long> sizesInProgress = new ArrayDeque();
+    private long bytesInProgress;
+    //start of the next chunk to submit
+    private long position;
+    private boolean keepBlankLines;
+
+    /**
+     * @param maxBytesInProgress bytes of the file read at the same time by
+     * all the threads (at least one chunk is read)
+     */
+    public ParallelLineReader(File textFile, int nbThreads, long maxBytesInProgress) throws IOException {
+        file = new RandomAccessFile(textFile, "r");
+        channel = file.getChannel();
+        fileSize = channel.size();
+        nbThreads = Math.max(1, nbThreads);
+        pool = Executors.newFixedThreadPool(nbThreads);
+        this.maxBytesInProgress = maxBytesInProgress;
+        //2 chunks per thread, so that a thread has a chunk to read while the lines of its last chunk are handed back
+        chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, maxBytesInProgress / (nbThreads * 2)));
+    }
+
+    //blank lines are handed back as empty strings instead of being skipped: to call before nextBatch
+    public void setKeepBlankLines(boolean keepBlankLines) {
+        this.keepBlankLines = keepBlankLines;
+    }
+
+    /**
+     * The non blank lines of the next chunk of the file, or null at the end
+     * of the file. The list can be empty.
+     */
+    public List<String> nextBatch() throws IOException, InterruptedException {
+        while ((chunksInProgress.isEmpty() || bytesInProgress < maxBytesInProgress) && position < fileSize) {
+            long end = endOfChunk(position);
+            chunksInProgress.add(pool.submit(new ChunkReader(position, end)));
+            sizesInProgress.add(end - position);
+            bytesInProgress += end - position;
+            position = end;
+        }
+        if (chunksInProgress.isEmpty()) {
+            return null;
+        }
+        try {
+            bytesInProgress -= sizesInProgress.poll();
+            return chunksInProgress.poll().get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    public void close() throws IOException {
+        pool.shutdownNow();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Replaces currLine.matches(".*\\w.*"), without a regex: false if the
+     * line has a letter, digit or "_" of ASCII. As "." does not match the
+     * line separators U+0085, U+2028 and U+2029, lines with one of them are
+     * also considered blank.
+     */
+    static boolean isBlank(CharSequence line, int from, int to) {
+        boolean hasWordChar = false;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+                hasWordChar = true;
+            } else if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return !hasWordChar;
+    }
+
+    /**
+     * The end of the chunk starting at start: just after the first line
+     * break ("\n", "\r\n" or "\r") found after start + chunkSize.
+     */
+    private long endOfChunk(long start) throws IOException {
+        long end = start + chunkSize;
+        if (end >= fileSize) {
+            return fileSize;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(4096);
+        //true when the last byte read was a "\r"
+        boolean afterCr = false;
+        while (end < fileSize) {
+            bytes.clear();
+            int nbBytes = channel.read(bytes, end);
+            if (nbBytes <= 0) {
+                return fileSize;
+            }
+            for (int i = 0; i < nbBytes; i++) {
+                //in UTF-8, the bytes of "\n" and "\r" can't be part of another character
+                byte b = bytes.get(i);
+                if (afterCr) {
+                    //"\r\n" is one line break: the chunk can't end between them
+                    return b == '\n' ? end + i + 1 : end + i;
+                }
+                if (b == '\n') {
+                    return end + i + 1;
+                }
+                afterCr = b == '\r';
+            }
+            end += nbBytes;
+        }
+        return fileSize;
+    }
+
+    private class ChunkReader implements Callable<List<String>> {
+
+        private final long start;
+        private final long end;
+
+        ChunkReader(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public List<String> call() throws IOException {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            CharsetDecoder decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = decoder.decode(bytes);
+            char[] text = chars.array();
+            int length = chars.limit();
+
+            List<String> lines = new ArrayList();
+            int lineStart = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i < length && text[i] != '\n' && text[i] != '\r') {
+                    continue;
+                }
+                //the last line of the file may have no line break
+                if (i < length || lineStart < length) {
+                    if (!isBlank(chars, lineStart, i)) {
+                        lines.add(new String(text, lineStart, i - lineStart));
+                    } else if (keepBlankLines) {
+                        lines.add("");
+                    }
+                }
+                if (i < length - 1 && text[i] == '\r' && text[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+            return lines;
+        }
+    }
+}
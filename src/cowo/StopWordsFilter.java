@@ -0,0 +1,145 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * The rules of the StopWordsRemover, applied to the n-grams while they are
+ * extracted: an n-gram which would be removed with the stopwords is not
+ * counted at all.
+ *
+ * The StopWordsRemover sees the terms after the lemmatization: their words in
+ * lower case, the last one replaced by its lemma. The filter applies the same
+ * transformation to the tokens of the n-gram before applying the rules, so
+ * that it rejects exactly the n-grams whose term would be removed later.
+ *
+ * Everything is prepared when the filter is created, from the tokens of the
+ * dictionary (which must then not change): the lower case and the lemmas of
+ * each token, the flags of each word, and the terms of the lists (stopwords,
+ * words to keep, words not to lemmatize) as sequences of word ids. The words
+ * which are not tokens of the dictionary (a lemma, a word of a list) get ids
+ * after those of the tokens. The filter is then read-only and can be used by
+ * several threads.
+ */
+public class StopWordsFilter {
+
+    private final int[] lowerCaseOf;
+    //lemma of a word in lower case, -1 when the lemma is empty
+    private final int[] lemmaOf;
+    //lemma when the term is in the list of words not to lemmatize
+    private final int[] lemmaWithoutPluralRuleOf;
+    private final byte[] wordFlags;
+    //terms of the lists, made of word ids
+    private final TermDictionary listedTerms = new TermDictionary();
+    private final BitSet stopTerms;
+    private final BitSet keepTerms;
+    private final BitSet noLemmaTerms;
+    //only used while the filter is created
+    private final TermDictionary dictionary;
+    private final Map<String, Integer> otherWordIds = new HashMap();
+    private final List<String> otherWords = new ArrayList();
+
+    public StopWordsFilter(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        int nbTokens = dictionary.getNbTokens();
+        lowerCaseOf = new int[nbTokens];
+        for (int token = 0; token < nbTokens; token++) {
+            lowerCaseOf[token] = wordId(dictionary.token(token).toLowerCase());
+        }
+        int nbLowerCaseWords = nbTokens + otherWords.size();
+        lemmaOf = new int[nbLowerCaseWords];
+        lemmaWithoutPluralRuleOf = new int[nbLowerCaseWords];
+        for (int word = 0; word < nbLowerCaseWords; word++) {
+            lemmaOf[word] = lemmaId(Lemmatizer.lemmatizeWord(word(word), true));
+            lemmaWithoutPluralRuleOf[word] = lemmaId(Lemmatizer.lemmatizeWord(word(word), false));
+        }
+        stopTerms = listedTermIds(Controller.setStopWords);
+        keepTerms = listedTermIds(Controller.setKeepWords);
+        noLemmaTerms = listedTermIds(Controller.setNoLemma);
+
+        wordFlags = new byte[nbTokens + otherWords.size()];
+        for (int word = 0; word < wordFlags.length; word++) {
+            wordFlags[word] = StopWordsRemover.flagsOf(word(word));
+        }
+    }
+
+    /**
+     * True if the n-gram made of tokens[from] to tokens[from + length - 1]
+     * would pass the StopWordsRemover, once lemmatized.
+     *
+     * @param words a buffer of at least length ints
+     */
+    public boolean accept(int[] tokens, int from, int length, int[] words) {
+        for (int i = 0; i < length; i++) {
+            words[i] = lowerCaseOf[tokens[from + i]];
+        }
+        //same lemmatization as Lemmatizer.doLemmatization
+        boolean pluralRule = true;
+        if (length > 1) {
+            int lowerCaseTerm = listedTerms.findTerm(words, 0, length);
+            pluralRule = lowerCaseTerm == -1 || !noLemmaTerms.get(lowerCaseTerm);
+        }
+        int lemma = pluralRule ? lemmaOf[words[length - 1]] : lemmaWithoutPluralRuleOf[words[length - 1]];
+        if (lemma != -1) {
+            words[length - 1] = lemma;
+        } else if (length > 1) {
+            length--;
+        } else {
+            return false;
+        }
+        int listedTerm = listedTerms.findTerm(words, 0, length);
+        return StopWordsRemover.write(wordFlags, words, length,
+                listedTerm != -1 && stopTerms.get(listedTerm),
+                listedTerm != -1 && keepTerms.get(listedTerm));
+    }
+
+    //the id of a token of the dictionary, or else an id after them
+    private int wordId(String word) {
+        int token = dictionary.findToken(word);
+        if (token != -1 && token < lowerCaseOf.length) {
+            return token;
+        }
+        Integer id = otherWordIds.get(word);
+        if (id == null) {
+            id = lowerCaseOf.length + otherWords.size();
+            otherWordIds.put(word, id);
+            otherWords.add(word);
+        }
+        return id;
+    }
+
+    private String word(int word) {
+        return word < lowerCaseOf.length ? dictionary.token(word) : otherWords.get(word - lowerCaseOf.length);
+    }
+
+    private int lemmaId(String lemma) {
+        return lemma.isEmpty() ? -1 : wordId(lemma);
+    }
+
+    //same selection of the terms as TermDictionary.termIds
+    private BitSet listedTermIds(Collection<String> terms) {
+        BitSet ids = new BitSet();
+        for (String term : terms) {
+            if (!term.isEmpty() && term.equals(term.trim()) && !term.contains("  ")) {
+                String[] termWords = term.split(" +");
+                int[] wordIds = new int[termWords.length];
+                for (int i = 0; i < termWords.length; i++) {
+                    wordIds[i] = wordId(termWords[i]);
+                }
+                ids.set(listedTerms.termId(wordIds, 0, wordIds.length));
+            }
+        }
+        return ids;
+    }
+}
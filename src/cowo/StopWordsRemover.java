@@ -4,102 +4,143 @@
  */
 package cowo;
 
-import com.google.common.collect.HashMultiset;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  *
  * @author C. Levallois
+ *
+ * The stopword lists are looked up once per token of the dictionary, when the
+ * StopWordsRemover is created: each token gets a byte of flags, one per list
+ * it belongs to. Filtering a term is then a loop over the flags of its tokens,
+ * with no String built and no allocation.
+ *
+ * The rules themselves (write) only see the flags of the words of a term, so
+ * that they can also be applied during the extraction of the n-grams, by a
+ * StopWordsFilter.
  */
 public final class StopWordsRemover {
 
-    //private final Entry<String> entry;
-    private String entryWord;
-    boolean multipleWord;
-    //private SnowballStemmer stemmer;
-    //private static String lang = "english";
-    private final int entryCount;
-    private HashMultiset<String> multisetToReturn;
-    //static int numberOfThreads = Runtime.getRuntime().availableProcessors();
-    //static int numberOfThreads = 7;
-    //private static ExecutorService pool = Executors.newCachedThreadPool();
-
-//    StopWordsRemoverWT(Entry<String> entry) {
-//
-//        this.entry = entry;
-//        this.entryWord = entry.getElement().toLowerCase().trim();
-//        this.entryCount = entry.getCount();
-//        //run();
-//    }
-    StopWordsRemover(String element, int entryCount) {
-        this.entryWord = element.replaceAll(" +", " ");
-        this.entryCount = entryCount;
-        this.multisetToReturn = HashMultiset.create();
+    //flags of a token
+    private static final byte SHORTER_THAN_MIN_LENGTH = 1;
+    private static final byte STOP = 2;
+    private static final byte SHORT_STOP = 4;
+    private static final byte SCIENTIFIC_STOP = 8;
+    private static final byte SCIENTIFIC_OR_SHORT_STOP = 16;
+    private final TermDictionary dictionary;
+    //terms of the stopword lists which are present in the dictionary (including those made of several words)
+    private final BitSet stopTerms;
+    private final BitSet keepTerms;
+    private byte[] tokenFlags;
+    private int[] words = new int[8];
+
+    StopWordsRemover(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.stopTerms = dictionary.termIds(Controller.setStopWords);
+        this.keepTerms = dictionary.termIds(Controller.setKeepWords);
+        this.tokenFlags = new byte[dictionary.getNbTokens()];
+        for (int token = 0; token < tokenFlags.length; token++) {
+            tokenFlags[token] = flagsOf(dictionary.token(token));
+        }
+    }
 
+    public TermCounts call(TermCounts terms) {
+        TermCounts multisetToReturn = new TermCounts(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            if (write(terms.getTerm(i))) {
+                multisetToReturn.add(terms.getTerm(i), terms.getCount(i));
+            }
+        }
+        return multisetToReturn;
+    }
 
+    boolean isStopWord(int term) {
+        return stopTerms.get(term);
     }
 
-    //@Override
-    public HashMultiset<String> call() {
+    boolean isKeepWord(int term) {
+        return keepTerms.get(term);
+    }
 
-        boolean write = true;
+    private boolean write(int entryWord) {
+        int nbWords = dictionary.termLength(entryWord);
+        if (words.length < nbWords) {
+            words = new int[nbWords];
+        }
+        dictionary.tokensOfTerm(entryWord, words);
+        //tokens added to the dictionary after the creation of the StopWordsRemover
+        if (dictionary.getNbTokens() > tokenFlags.length) {
+            int nbTokensWithFlags = tokenFlags.length;
+            tokenFlags = Arrays.copyOf(tokenFlags, dictionary.getNbTokens());
+            for (int token = nbTokensWithFlags; token < tokenFlags.length; token++) {
+                tokenFlags[token] = flagsOf(dictionary.token(token));
+            }
+        }
+        return write(tokenFlags, words, nbWords, stopTerms.get(entryWord), keepTerms.get(entryWord));
+    }
 
+    /**
+     * The stopword rules, applied to a term made of nbWords words.
+     *
+     * @param wordFlags flags of the words, by word id (see flagsOf)
+     * @param words the ids of the words of the term
+     * @param stopTerm true if the whole term is in the list of stopwords
+     * @param keepTerm true if the whole term is in the list of words to keep
+     * @return true if the term is kept
+     */
+    static boolean write(byte[] wordFlags, int[] words, int nbWords, boolean stopTerm, boolean keepTerm) {
 
-        if (Controller.useScientificStopWords) {
-            multipleWord = entryWord.contains(" ");
+        boolean write = true;
 
 
-            if (multipleWord) {
-                String[] wordsNGrams = entryWord.split(" ");
+        if (Controller.useScientificStopWords) {
 
 
+            if (nbWords > 1) {
 
-                for (int n = 0; n < wordsNGrams.length; n++) {
+                for (int n = 0; n < nbWords; n++) {
 
-                    if (wordsNGrams[n].length() < Controller.minWordLength) {
+                    if ((wordFlags[words[n]] & SHORTER_THAN_MIN_LENGTH) != 0) {
                         write = false;
                         break;
                     }
 
                 }
 
-                if (wordsNGrams.length == 2
-                        && ((Controller.setStopWordsScientificOrShort.contains(wordsNGrams[0].toLowerCase().trim())
-                        || Controller.setStopWordsScientificOrShort.contains(wordsNGrams[1].toLowerCase().trim())))) {
+                if (nbWords == 2
+                        && ((wordFlags[words[0]] & SCIENTIFIC_OR_SHORT_STOP) != 0 || (wordFlags[words[1]] & SCIENTIFIC_OR_SHORT_STOP) != 0)) {
                     write = false;
 
                 }
 
-                if (wordsNGrams.length > 2) {
+                if (nbWords > 2) {
                     int scoreGarbage = 0;
 
-                    for (int i = 0; i < wordsNGrams.length; i++) {
+                    for (int i = 0; i < nbWords; i++) {
 
-                        if ((i == 0 | i == (wordsNGrams.length - 1)) & Controller.setStopWordsScientificOrShort.contains(wordsNGrams[i].toLowerCase().trim())) {
+                        if ((i == 0 | i == (nbWords - 1)) & (wordFlags[words[i]] & SCIENTIFIC_OR_SHORT_STOP) != 0) {
                             scoreGarbage = Controller.maxAcceptedGarbage + 1;
                             continue;
                         }
 
 
-                        if (Controller.setStopWordsShort.contains(wordsNGrams[i].toLowerCase().trim())) {
+                        if ((wordFlags[words[i]] & SHORT_STOP) != 0) {
                             scoreGarbage = scoreGarbage + 3;
                             continue;
                         }
 
-                        if (Controller.setStopWordsScientific.contains(wordsNGrams[i].toLowerCase().trim())) {
+                        if ((wordFlags[words[i]] & SCIENTIFIC_STOP) != 0) {
                             scoreGarbage = scoreGarbage + 2;
                             continue;
                         }
 
                     }
 
-                    if (Controller.setStopWords.contains(entryWord)) {
+                    if (stopTerm) {
                         scoreGarbage = Controller.maxAcceptedGarbage + 1;
                     }
 
-                    //                    if (Main.setStopWordsShort.contains(wordsNGrams[0].toLowerCase().trim())
-//                            || (Main.setStopWordsShort.contains(wordsNGrams[1].toLowerCase().trim()) & Main.setStopWordsShort.contains(wordsNGrams[2].toLowerCase().trim()))
-//                            || (Main.setStopWords.contains(wordsNGrams[0].toLowerCase().trim())& Main.setStopWordsShort.contains(wordsNGrams[1].toLowerCase().trim()) && Main.setStopWords.contains(wordsNGrams[2].toLowerCase().trim()))
-//                            || (Main.setStopWordsShort.contains(wordsNGrams[wordsNGrams.length - 1].toLowerCase().trim()))) {
                     if (scoreGarbage > Controller.maxAcceptedGarbage) {
 
                         write = false;
@@ -107,17 +148,9 @@ public final class StopWordsRemover {
                 }
 
 
-
-
-
-
             } else {
-//                System.out.println("single word!");
-//                    Future<String> result = pool.submit(new StanfordLemmatization(entryWord));
-//                    entryWord = result.get();
-                //entryWord = new StanfordLemmatization(entryWord).call();
 
-                if (Controller.setStopWords.contains(entryWord) & !Controller.setKeepWords.contains(entryWord)) {
+                if (stopTerm & !keepTerm) {
 
                     write = false;
 
@@ -126,30 +159,40 @@ public final class StopWordsRemover {
             }
 
 
-            if (Controller.setKeepWords.contains(entryWord)) {
+            if (keepTerm) {
                 write = true;
             }
 
         } else {
-            String[] wordsNGrams = entryWord.split(" ");
-            for (int i = 0; i < wordsNGrams.length; i++) {
-                if (Controller.setStopWords.contains(wordsNGrams[i])) {
+            for (int i = 0; i < nbWords; i++) {
+                if ((wordFlags[words[i]] & STOP) != 0) {
                     write = false;
                 }
             }
         } //end of else block       
 
-        if (write) {
-            multisetToReturn.add(entryWord, entryCount);
-//            System.out.println("term added!");
-//                if ("risk".equals(entryWord)){
-//                    System.out.println("risk added to filteredFreqSet "+entryCount);
-//                }
-
+        return write;
+    }
 
-//                return toReturn;
+    //the flags of a word: the stopword lists it belongs to, and whether it is too short
+    static byte flagsOf(String word) {
+        String lowerCase = word.toLowerCase().trim();
+        byte flags = 0;
+        if (word.length() < Controller.minWordLength) {
+            flags |= SHORTER_THAN_MIN_LENGTH;
         }
-
-        return multisetToReturn;
+        if (Controller.setStopWords.contains(word)) {
+            flags |= STOP;
+        }
+        if (Controller.setStopWordsShort.contains(lowerCase)) {
+            flags |= SHORT_STOP;
+        }
+        if (Controller.setStopWordsScientific.contains(lowerCase)) {
+            flags |= SCIENTIFIC_STOP;
+        }
+        if (Controller.setStopWordsScientificOrShort.contains(lowerCase)) {
+            flags |= SCIENTIFIC_OR_SHORT_STOP;
+        }
+        return flags;
     }
-}
\ No newline at end of file
+}
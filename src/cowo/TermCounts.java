@@ -0,0 +1,134 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import Utils.TopK;
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Number of occurrences of terms, the terms being ids of a TermDictionary.
+ * Takes the place of a Multiset of Strings: the terms and their counts are
+ * kept in int arrays, in the order in which the terms were first added, with
+ * an open addressing table to find the position of a term.
+ */
+public class TermCounts {
+
+    private int[] terms;
+    private int[] counts;
+    private int size;
+    //position of the term + 1, 0 for an empty slot
+    private int[] slots;
+
+    public TermCounts() {
+        this(16);
+    }
+
+    public TermCounts(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        terms = new int[capacity];
+        counts = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    public void add(int term, int count) {
+        int mask = slots.length - 1;
+        int slot = hash(term) & mask;
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (terms[position] == term) {
+                counts[position] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        terms[size] = term;
+        counts[size] = count;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    public int count(int term) {
+        int position = position(term);
+        return position == -1 ? 0 : counts[position];
+    }
+
+    public boolean contains(int term) {
+        return position(term) != -1;
+    }
+
+    //number of distinct terms
+    public int size() {
+        return size;
+    }
+
+    //the term at this position (from 0 to size() - 1)
+    public int getTerm(int position) {
+        return terms[position];
+    }
+
+    //the count of the term at this position
+    public int getCount(int position) {
+        return counts[position];
+    }
+
+    public void addAll(TermCounts other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.terms[i], other.counts[i]);
+        }
+    }
+
+    /**
+     * The k most frequent terms (or all terms if there are less than k), the
+     * most frequent first. Terms with the same count keep the order in which
+     * they were added.
+     */
+    public int[] topTerms(int k) {
+        int[] positions = TopK.select(counts, size, k);
+        int[] top = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            top[i] = terms[positions[i]];
+        }
+        return top;
+    }
+
+    private int position(int term) {
+        int mask = slots.length - 1;
+        int slot = hash(term) & mask;
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (terms[position] == term) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(terms[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(int term) {
+        int h = term * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Gives a dense int id to each distinct token of the corpus, and to each
+ * distinct term (a sequence of tokens: the n-grams). All stages of the
+ * analysis work on these ids; the term as a String is only built when it is
+ * printed.
+ *
+ * A term is stored as the ids of its tokens, in one flat array shared by all
+ * terms. Its String form is its tokens separated by a single space.
+ */
+public class TermDictionary {
+
+    private static final long HASH_MULTIPLIER = 0x100000001B3L;
+    //tokens
+    private final HashMap<String, Integer> tokenIds = new HashMap();
+    private String[] tokens = new String[1024];
+    private int nbTokens;
+    //terms: the tokens of term i are termTokens[termStarts[i]] to termTokens[termStarts[i + 1] - 1]
+    private int[] termTokens = new int[4096];
+    private int[] termStarts = new int[1025];
+    private int[] termHashes = new int[1024];
+    private String[] termStrings = new String[1024];
+    private int nbTerms;
+    //open addressing table of the terms: term id + 1, 0 for an empty slot
+    private int[] slots = new int[2048];
+
+    public int tokenId(String token) {
+        Integer id = tokenIds.get(token);
+        if (id == null) {
+            id = nbTokens;
+            if (nbTokens == tokens.length) {
+                tokens = Arrays.copyOf(tokens, nbTokens * 2);
+            }
+            tokens[nbTokens++] = token;
+            tokenIds.put(token, id);
+        }
+        return id;
+    }
+
+    //-1 if the token is not in the dictionary
+    public int findToken(String token) {
+        Integer id = tokenIds.get(token);
+        return id == null ? -1 : id;
+    }
+
+    public String token(int tokenId) {
+        return tokens[tokenId];
+    }
+
+    public int getNbTokens() {
+        return nbTokens;
+    }
+
+    /**
+     * Id of the term made of tokens[from] to tokens[from + length - 1], added
+     * to the dictionary if needed.
+     */
+    public int termId(int[] tokens, int from, int length) {
+        return termId(tokens, from, length, hash(tokens, from, length));
+    }
+
+    /**
+     * Same as termId(int[], int, int), when the hash of the tokens is already
+     * known: hash(tokens, from, length), or a rolling hash computed from the
+     * hash of the previous window of tokens (see rollHash).
+     */
+    public int termId(int[] tokens, int from, int length, long tokensHash) {
+        int hash = mix(tokensHash);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int term = slots[slot] - 1;
+            if (termHashes[term] == hash && sameTokens(term, tokens, from, length)) {
+                return term;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int term = addTerm(tokens, from, length, hash);
+        slots[slot] = term + 1;
+        if (nbTerms * 2 > slots.length) {
+            rehash();
+        }
+        return term;
+    }
+
+    //-1 if the term is not in the dictionary
+    public int findTerm(int[] tokens, int from, int length) {
+        return findTerm(tokens, from, length, hash(tokens, from, length));
+    }
+
+    //-1 if the term is not in the dictionary
+    public int findTerm(int[] tokens, int from, int length, long tokensHash) {
+        int hash = mix(tokensHash);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int term = slots[slot] - 1;
+            if (termHashes[term] == hash && sameTokens(term, tokens, from, length)) {
+                return term;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    //the words of the term are separated by spaces
+    public int termId(String term) {
+        String[] words = term.trim().split(" +");
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            ids[i] = tokenId(words[i]);
+        }
+        return termId(ids, 0, ids.length);
+    }
+
+    //-1 if the term is not in the dictionary
+    public int findTerm(String term) {
+        String[] words = term.trim().split(" +");
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            ids[i] = findToken(words[i]);
+            if (ids[i] == -1) {
+                return -1;
+            }
+        }
+        return findTerm(ids, 0, ids.length);
+    }
+
+    /**
+     * Ids of a collection of terms (such as a list of stopwords), as a set.
+     * The terms are added to the dictionary, so that a term made later from
+     * the same tokens gets the same id.
+     */
+    public BitSet termIds(Collection<String> terms) {
+        BitSet ids = new BitSet();
+        for (String term : terms) {
+            //a term made of tokens is trimmed and has single spaces between its words: other Strings can't be equal to it
+            if (!term.isEmpty() && term.equals(term.trim()) && !term.contains("  ")) {
+                ids.set(termId(term));
+            }
+        }
+        return ids;
+    }
+
+    //number of tokens in the term
+    public int termLength(int term) {
+        return termStarts[term + 1] - termStarts[term];
+    }
+
+    public int tokenOfTerm(int term, int i) {
+        return termTokens[termStarts[term] + i];
+    }
+
+    //copies the tokens of the term in buffer, starting at index 0, and returns their number
+    public int tokensOfTerm(int term, int[] buffer) {
+        int length = termLength(term);
+        System.arraycopy(termTokens, termStarts[term], buffer, 0, length);
+        return length;
+    }
+
+    //number of characters of the term as a String, computed without building the String
+    public int charLength(int term) {
+        int length = termLength(term) - 1;
+        for (int i = termStarts[term]; i < termStarts[term + 1]; i++) {
+            length += tokens[termTokens[i]].length();
+        }
+        return length;
+    }
+
+    public String term(int term) {
+        if (termStrings[term] == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = termStarts[term]; i < termStarts[term + 1]; i++) {
+                sb.append(i > termStarts[term] ? " " : "").append(tokens[termTokens[i]]);
+            }
+            termStrings[term] = sb.toString();
+        }
+        return termStrings[term];
+    }
+
+    public int getNbTerms() {
+        return nbTerms;
+    }
+
+    /**
+     * Polynomial hash of a sequence of tokens: sum of (token + 1) x M^(length
+     * - 1 - i), modulo 2^64.
+     */
+    static long hash(int[] tokens, int from, int length) {
+        long h = 0;
+        for (int i = from; i < from + length; i++) {
+            h = h * HASH_MULTIPLIER + tokens[i] + 1;
+        }
+        return h;
+    }
+
+    /**
+     * M^(length - 1), used by rollHash for windows of this length.
+     */
+    static long hashPower(int length) {
+        long power = 1;
+        for (int i = 1; i < length; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+        return power;
+    }
+
+    /**
+     * Rolling hash (Rabin-Karp): the hash of the window of tokens starting
+     * one token after the window of hash h, computed in constant time.
+     *
+     * @param outgoing the first token of the previous window
+     * @param incoming the token following the previous window
+     * @param power hashPower(length of the window)
+     */
+    static long rollHash(long h, int outgoing, int incoming, long power) {
+        return (h - (outgoing + 1) * power) * HASH_MULTIPLIER + incoming + 1;
+    }
+
+    static int mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private boolean sameTokens(int term, int[] tokens, int from, int length) {
+        int start = termStarts[term];
+        if (termStarts[term + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (termTokens[start + i] != tokens[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addTerm(int[] tokens, int from, int length, int hash) {
+        if (nbTerms == termHashes.length) {
+            termStarts = Arrays.copyOf(termStarts, nbTerms * 2 + 1);
+            termHashes = Arrays.copyOf(termHashes, nbTerms * 2);
+            termStrings = Arrays.copyOf(termStrings, nbTerms * 2);
+        }
+        int start = termStarts[nbTerms];
+        if (start + length > termTokens.length) {
+            termTokens = Arrays.copyOf(termTokens, Math.max(termTokens.length * 2, start + length));
+        }
+        System.arraycopy(tokens, from, termTokens, start, length);
+        termStarts[nbTerms + 1] = start + length;
+        termHashes[nbTerms] = hash;
+        return nbTerms++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int term = 0; term < nbTerms; term++) {
+            int slot = termHashes[term] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = term + 1;
+        }
+    }
+}
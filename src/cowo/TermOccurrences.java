@@ -0,0 +1,89 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * The frequent terms found in one line: every hit with its position, and the
+ * number of hits per term. Terms are designated by their index in the array
+ * of terms the matcher was built with. The object is reused from one line to
+ * the next: call clear() between two lines.
+ */
+public class TermOccurrences {
+
+    private int nbTokens;
+    private int nbHits;
+    private int[] hitTerms = new int[16];
+    private int[] hitPositions = new int[16];
+    private int nbTerms;
+    private final int[] terms;
+    private final int[] counts;
+
+    public TermOccurrences(int nbTermsInVocabulary) {
+        terms = new int[nbTermsInVocabulary];
+        counts = new int[nbTermsInVocabulary];
+    }
+
+    void addHit(int term, int position) {
+        if (nbHits == hitTerms.length) {
+            hitTerms = Arrays.copyOf(hitTerms, nbHits * 2);
+            hitPositions = Arrays.copyOf(hitPositions, nbHits * 2);
+        }
+        hitTerms[nbHits] = term;
+        hitPositions[nbHits] = position;
+        nbHits++;
+        if (counts[term]++ == 0) {
+            terms[nbTerms++] = term;
+        }
+    }
+
+    void setNbTokens(int nbTokens) {
+        this.nbTokens = nbTokens;
+    }
+
+    public void clear() {
+        for (int i = 0; i < nbTerms; i++) {
+            counts[terms[i]] = 0;
+        }
+        nbTerms = 0;
+        nbHits = 0;
+        nbTokens = 0;
+    }
+
+    //number of tokens of the line, used as the length of the doc in the TD-IDF measure
+    public int getNbTokens() {
+        return nbTokens;
+    }
+
+    public int getNbHits() {
+        return nbHits;
+    }
+
+    public int getHitTerm(int hit) {
+        return hitTerms[hit];
+    }
+
+    //position of the first token of the hit in the line
+    public int getHitPosition(int hit) {
+        return hitPositions[hit];
+    }
+
+    //number of distinct terms found in the line
+    public int getNbTerms() {
+        return nbTerms;
+    }
+
+    public int getTerm(int i) {
+        return terms[i];
+    }
+
+    public int getCount(int term) {
+        return counts[term];
+    }
+}
@@ -4,14 +4,41 @@
  */
 package cowo;
 
-import org.apache.commons.lang3.StringUtils;
-
 /**
  *
  * @author C. Levallois
+ *
+ * The cleaning is done in one pass over the chars of the line, with a table
+ * giving the replacement of each ASCII char. It gives the same result as:
+ * currLine.replaceAll("’", "'").replaceAll("[^A-Za-z'\\|]", " ").toLowerCase()
+ * (a character outside of the Basic Multilingual Plane, made of 2 chars,
+ * becomes one space).
  */
 public class TextCleaner {
 
+    //replacement of each ASCII char: lower case letter, "'", "|" or space
+    private static final char[] ASCII_REPLACEMENTS = new char[128];
+    //one buffer per thread, so that lines can be cleaned in parallel
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[1024];
+        }
+    };
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                //as String.toLowerCase(), in the default locale
+                ASCII_REPLACEMENTS[c] = String.valueOf(c).toLowerCase().charAt(0);
+            } else if (c == '\'' || c == '|') {
+                ASCII_REPLACEMENTS[c] = c;
+            } else {
+                ASCII_REPLACEMENTS[c] = ' ';
+            }
+        }
+    }
+
     public static String doBasicCleaning(String currLine) {
 
 //        try {
@@ -23,9 +50,7 @@ public class TextCleaner {
             //System.out.println("line inside the Text Cleaner: \""+currLine+"\"");
 //            System.out.println("currLine after trimming: " + currLine);
 //            currLine = currLine.replaceAll("\\p{C}", " ");
-            currLine = currLine.replaceAll("’", "'");
-            currLine = currLine.replaceAll("[^A-Za-z'\\|]", " ");
-            currLine = currLine.toLowerCase();
+            currLine = clean(currLine);
 //            currLine = currLine.replaceAll(" +", " ");
             //System.out.println("line inside the Text Cleaner, after the cleaning: \""+currLine+"\"");
 
@@ -38,4 +63,30 @@ public class TextCleaner {
 //        }
         return currLine;
     }
+
+    private static String clean(String line) {
+        int length = line.length();
+        char[] chars = BUFFER.get();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            BUFFER.set(chars);
+        }
+        line.getChars(0, length, chars, 0);
+        //the cleaned line is written over the line: it can only be shorter
+        int cleanedLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 128) {
+                chars[cleanedLength++] = ASCII_REPLACEMENTS[c];
+            } else if (c == '’') {
+                chars[cleanedLength++] = '\'';
+            } else {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                    i++;
+                }
+                chars[cleanedLength++] = ' ';
+            }
+        }
+        return new String(chars, 0, cleanedLength);
+    }
 }
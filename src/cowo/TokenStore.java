@@ -0,0 +1,320 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * The lines of the text, each stored as the ids of its tokens in the
+ * TermDictionary. A line is tokenized once, when it is added; the stages of
+ * the analysis then re-read the lines in order with a Reader.
+ *
+ * Lines are written one after the other in an int array: the number of tokens
+ * of the line, then its tokens. When the array holds more than memoryBudget
+ * ints, it is written (spilled) to a temporary file and emptied, so that the
+ * memory used does not grow with the size of the text. The temporary file is
+ * deleted by close().
+ *
+ * With a Lemmatizer (setLemmatizer), each token is replaced by its lemma when
+ * the line is added, so that the plural forms of a word are counted together
+ * from the start.
+ *
+ * A line of the store does not have to be a line of the text: a line can be
+ * given in several parts (startLine, addTokens, endLine), such as the lines
+ * of a paragraph, and lines can be cut every maxTokensPerLine tokens. Only
+ * complete lines are written to the temporary file.
+ */
+public class TokenStore {
+
+    //size of the blocks read from the temporary file, in ints
+    private static final int READ_BLOCK = 16384;
+    private final TermDictionary dictionary;
+    private final int memoryBudget;
+    private int[] buffer;
+    private int size;
+    private int nbLines;
+    private File spillFile;
+    private FileChannel spillChannel;
+    private long nbSpilledInts;
+    private Lemmatizer lemmatizer;
+    //start of the line being added, -1 between two lines
+    private int lineStart = -1;
+    private int nbTokensOfLine;
+    private int maxTokensPerLine;
+
+    public TokenStore(TermDictionary dictionary, int memoryBudget) {
+        this.dictionary = dictionary;
+        this.memoryBudget = Math.max(memoryBudget, 1024);
+        this.buffer = new int[Math.min(this.memoryBudget, 65536)];
+    }
+
+    /**
+     * The tokens of the lines added next are lemmatized (all of them, not only
+     * the last word of the n-grams), null to keep the tokens as they are.
+     */
+    public void setLemmatizer(Lemmatizer lemmatizer) {
+        this.lemmatizer = lemmatizer;
+    }
+
+    /**
+     * Adds a line, split in tokens with Controller.wordSeparator. Empty tokens
+     * (several separators in a row), and tokens whose lemma is empty, are
+     * skipped.
+     */
+    public void addLine(String line) throws IOException {
+        startLine();
+        addTokens(line);
+        endLine(true);
+    }
+
+    /**
+     * Lines are cut every maxTokensPerLine tokens: a line of the text makes
+     * several lines of the store. 0 for no limit.
+     */
+    public void setMaxTokensPerLine(int maxTokensPerLine) {
+        this.maxTokensPerLine = maxTokensPerLine;
+    }
+
+    //starts a line, whose tokens are then added with addTokens
+    public void startLine() throws IOException {
+        ensureCapacity(1);
+        lineStart = size++;
+        nbTokensOfLine = 0;
+    }
+
+    /**
+     * Adds the tokens of a text, split with Controller.wordSeparator, to the
+     * line started by startLine. Empty tokens and tokens whose lemma is empty
+     * are skipped.
+     */
+    public void addTokens(String text) throws IOException {
+        String[] words = text.split(Controller.wordSeparator);
+        ensureCapacity(words.length);
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                int token = dictionary.tokenId(word);
+                if (lemmatizer != null) {
+                    token = lemmatizer.lemmaOfToken(token);
+                    if (token == -1) {
+                        continue;
+                    }
+                }
+                if (nbTokensOfLine == maxTokensPerLine && maxTokensPerLine > 0) {
+                    endLine(true);
+                    startLine();
+                }
+                ensureCapacity(1);
+                buffer[size++] = token;
+                nbTokensOfLine++;
+            }
+        }
+    }
+
+    //ends the line started by startLine: a line without tokens is dropped
+    public void endLine() {
+        endLine(false);
+    }
+
+    private void endLine(boolean keepIfEmpty) {
+        if (nbTokensOfLine == 0 && !keepIfEmpty) {
+            size = lineStart;
+        } else {
+            buffer[lineStart] = nbTokensOfLine;
+            nbLines++;
+        }
+        lineStart = -1;
+    }
+
+    public int getNbLines() {
+        return nbLines;
+    }
+
+    /**
+     * A new Reader, positioned before the first line. Several Readers can be
+     * used at the same time, but no line should be added while reading.
+     */
+    public Reader reader() throws IOException {
+        return new Reader();
+    }
+
+    //deletes the temporary file
+    public void close() throws IOException {
+        if (spillChannel != null) {
+            spillChannel.close();
+            spillChannel = null;
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    private void ensureCapacity(int nbInts) throws IOException {
+        if (size + nbInts <= buffer.length) {
+            return;
+        }
+        //the line being added is not complete: it stays in memory
+        int nbCompleteInts = lineStart == -1 ? size : lineStart;
+        if (size + nbInts > memoryBudget && nbCompleteInts > 0) {
+            spill(nbCompleteInts);
+        }
+        if (nbInts > buffer.length - size) {
+            int capacity = buffer.length;
+            while (capacity < size + nbInts) {
+                capacity *= 2;
+            }
+            int[] newBuffer = new int[Math.max(size + nbInts, Math.min(capacity, memoryBudget))];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+    }
+
+    //writes the first nbInts ints of the buffer to the temporary file
+    private void spill(int nbInts) throws IOException {
+        if (spillChannel == null) {
+            spillFile = File.createTempFile("cowo", ".tokens");
+            spillFile.deleteOnExit();
+            spillChannel = new FileOutputStream(spillFile).getChannel();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(nbInts * 4);
+        bytes.asIntBuffer().put(buffer, 0, nbInts);
+        while (bytes.hasRemaining()) {
+            spillChannel.write(bytes);
+        }
+        nbSpilledInts += nbInts;
+        System.arraycopy(buffer, nbInts, buffer, 0, size - nbInts);
+        size -= nbInts;
+        if (lineStart != -1) {
+            lineStart -= nbInts;
+        }
+    }
+
+    /**
+     * Reads the lines in the order in which they were added: the lines
+     * written to the temporary file first, then those still in memory.
+     */
+    public class Reader {
+
+        private FileChannel channel;
+        private final ByteBuffer block;
+        private final IntBuffer blockInts;
+        private long nbIntsLeftInFile;
+        private int position;
+        private int[] tokens = new int[256];
+        private int nbTokens;
+
+        private Reader() throws IOException {
+            nbIntsLeftInFile = nbSpilledInts;
+            if (nbIntsLeftInFile > 0) {
+                spillChannel.force(false);
+                channel = new FileInputStream(spillFile).getChannel();
+                block = ByteBuffer.allocate(READ_BLOCK * 4);
+                blockInts = block.asIntBuffer();
+                blockInts.limit(0);
+            } else {
+                block = null;
+                blockInts = null;
+            }
+        }
+
+        /**
+         * Moves to the next line. Returns false, and closes the Reader, when
+         * there are no more lines.
+         */
+        public boolean next() throws IOException {
+            if (nbIntsLeftInFile > 0) {
+                nbTokens = nextIntFromFile();
+                if (tokens.length < nbTokens) {
+                    tokens = new int[Math.max(nbTokens, tokens.length * 2)];
+                }
+                for (int i = 0; i < nbTokens; i++) {
+                    tokens[i] = nextIntFromFile();
+                }
+                if (nbIntsLeftInFile == 0) {
+                    close();
+                }
+                return true;
+            }
+            if (position < size) {
+                nbTokens = buffer[position];
+                if (tokens.length < nbTokens) {
+                    tokens = new int[Math.max(nbTokens, tokens.length * 2)];
+                }
+                System.arraycopy(buffer, position + 1, tokens, 0, nbTokens);
+                position += nbTokens + 1;
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        /**
+         * Reads the next lines, at most maxLines, and returns them as they are
+         * stored: the number of tokens of a line, then its tokens. Returns
+         * null when there are no more lines. Used to hand chunks of lines to
+         * other threads.
+         */
+        public int[] nextLines(int maxLines) throws IOException {
+            int[] lines = new int[1024];
+            int length = 0;
+            for (int i = 0; i < maxLines && next(); i++) {
+                if (length + nbTokens + 1 > lines.length) {
+                    lines = Arrays.copyOf(lines, Math.max(lines.length * 2, length + nbTokens + 1));
+                }
+                lines[length++] = nbTokens;
+                System.arraycopy(tokens, 0, lines, length, nbTokens);
+                length += nbTokens;
+            }
+            return length == 0 ? null : Arrays.copyOf(lines, length);
+        }
+
+        public int getNbTokens() {
+            return nbTokens;
+        }
+
+        /**
+         * The tokens of the current line are getTokens()[0] to
+         * getTokens()[getNbTokens() - 1]. The array is reused for the next
+         * line.
+         */
+        public int[] getTokens() {
+            return tokens;
+        }
+
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        private int nextIntFromFile() throws IOException {
+            if (!blockInts.hasRemaining()) {
+                block.clear();
+                long nbBytes = Math.min(block.capacity(), nbIntsLeftInFile * 4);
+                block.limit((int) nbBytes);
+                while (block.hasRemaining()) {
+                    if (channel.read(block) == -1) {
+                        throw new IOException("temporary file of the tokens is truncated");
+                    }
+                }
+                blockInts.clear();
+                blockInts.limit((int) nbBytes / 4);
+            }
+            nbIntsLeftInFile--;
+            return blockInts.get();
+        }
+    }
+}
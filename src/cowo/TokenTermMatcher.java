@@ -0,0 +1,188 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Finds the frequent terms of a line on its tokens rather than on its
+ * characters: a term is found only where all its words are whole tokens of
+ * the line, in the same order. "car" is found in "a red car" but not in
+ * "a scar".
+ *
+ * Lines are split with Controller.wordSeparator, as in NGramFinder, and their
+ * tokens are looked up in the TermDictionary which holds the terms. Empty
+ * tokens (several separators in a row) are skipped.
+ *
+ * Frequent terms have been lemmatized (on their last word) but lines have not:
+ * the last word of a term is also found where a token of the line has this
+ * word as its lemma ("digital library" is found in "digital libraries").
+ */
+public class TokenTermMatcher {
+
+    private static final int ROOT = 0;
+    private final TermDictionary dictionary;
+    private final int[] terms;
+    private int nbNodes;
+    private int maxDepth;
+    //transitions of the trie: key = (node, token id) packed in a long, value = child node
+    private long[] transitionKeys;
+    private int[] transitionValues;
+    private int[] termAtNode;
+    //lemma of each token of the dictionary, -2 when not computed yet
+    private int[] lemmaOfToken = new int[0];
+    private int[] lineWords = new int[64];
+    private int[] lineLemmas = new int[64];
+
+    /**
+     * @param terms ids of the terms to find: the result of a match designates
+     * a term by its index in this array.
+     */
+    public TokenTermMatcher(TermDictionary dictionary, int[] terms) {
+        this.dictionary = dictionary;
+        this.terms = terms;
+        int capacity = 1;
+        for (int term : terms) {
+            capacity += dictionary.termLength(term);
+        }
+        termAtNode = new int[capacity];
+        Arrays.fill(termAtNode, -1);
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        transitionKeys = new long[tableSize];
+        Arrays.fill(transitionKeys, -1L);
+        transitionValues = new int[tableSize];
+        nbNodes = 1;
+
+        for (int i = 0; i < terms.length; i++) {
+            int node = ROOT;
+            int length = dictionary.termLength(terms[i]);
+            for (int j = 0; j < length; j++) {
+                int token = dictionary.tokenOfTerm(terms[i], j);
+                int child = getTransition(node, token);
+                if (child == -1) {
+                    child = nbNodes++;
+                    putTransition(node, token, child);
+                }
+                node = child;
+            }
+            termAtNode[node] = i;
+            maxDepth = Math.max(maxDepth, length);
+        }
+    }
+
+    public void match(String line, TermOccurrences occurrences) {
+        match(line.split(Controller.wordSeparator), occurrences);
+    }
+
+    /**
+     * Records in occurrences every term found in the tokens, with the
+     * position (in non empty tokens) of its first word.
+     */
+    public void match(String[] tokens, TermOccurrences occurrences) {
+        if (lineWords.length < tokens.length) {
+            lineWords = new int[tokens.length];
+            lineLemmas = new int[tokens.length];
+        }
+        int nbWords = 0;
+        for (String token : tokens) {
+            if (!token.isEmpty()) {
+                lineWords[nbWords++] = dictionary.findToken(token);
+            }
+        }
+        matchWords(nbWords, occurrences);
+    }
+
+    /**
+     * Same as match(String[], TermOccurrences), for a line already split in
+     * the token ids of the dictionary: tokens[from] to tokens[from + nbTokens
+     * - 1].
+     */
+    public void match(int[] tokens, int from, int nbTokens, TermOccurrences occurrences) {
+        if (lineWords.length < nbTokens) {
+            lineWords = new int[nbTokens];
+            lineLemmas = new int[nbTokens];
+        }
+        System.arraycopy(tokens, from, lineWords, 0, nbTokens);
+        matchWords(nbTokens, occurrences);
+    }
+
+    private void matchWords(int nbWords, TermOccurrences occurrences) {
+        for (int i = 0; i < nbWords; i++) {
+            lineLemmas[i] = lineWords[i] == -1 ? -1 : lemma(lineWords[i]);
+        }
+        occurrences.setNbTokens(nbWords);
+
+        for (int start = 0; start < nbWords; start++) {
+            int node = ROOT;
+            int end = Math.min(nbWords, start + maxDepth);
+            for (int i = start; i < end; i++) {
+                if (lineLemmas[i] != lineWords[i] && lineLemmas[i] != -1) {
+                    int lemmaNode = getTransition(node, lineLemmas[i]);
+                    if (lemmaNode != -1 && termAtNode[lemmaNode] != -1) {
+                        occurrences.addHit(termAtNode[lemmaNode], start);
+                    }
+                }
+                if (lineWords[i] == -1) {
+                    break;
+                }
+                node = getTransition(node, lineWords[i]);
+                if (node == -1) {
+                    break;
+                }
+                if (termAtNode[node] != -1) {
+                    occurrences.addHit(termAtNode[node], start);
+                }
+            }
+        }
+    }
+
+    private int lemma(int token) {
+        if (token >= lemmaOfToken.length) {
+            int previousLength = lemmaOfToken.length;
+            lemmaOfToken = Arrays.copyOf(lemmaOfToken, Math.max(dictionary.getNbTokens(), token + 1));
+            Arrays.fill(lemmaOfToken, previousLength, lemmaOfToken.length, -2);
+        }
+        if (lemmaOfToken[token] == -2) {
+            lemmaOfToken[token] = dictionary.findToken(Lemmatizer.lemmatizeWord(dictionary.token(token)));
+        }
+        return lemmaOfToken[token];
+    }
+
+    public int[] getTerms() {
+        return terms;
+    }
+
+    private int getTransition(int node, int wordId) {
+        long key = ((long) node << 32) | wordId;
+        int mask = transitionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (transitionKeys[slot] != -1L) {
+            if (transitionKeys[slot] == key) {
+                return transitionValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void putTransition(int node, int wordId, int child) {
+        long key = ((long) node << 32) | wordId;
+        int mask = transitionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (transitionKeys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        transitionKeys[slot] = key;
+        transitionValues[slot] = child;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cowo;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author C. Levallois
+ *
+ * Cuts the text in the units in which terms co-occur, and adds each unit to
+ * the TokenStore as one of its lines, as the lines of the text are read: no
+ * unit is kept as a String. The units are the documents of the rest of the
+ * analysis (n-grams don't cross them, TF-IDF counts them). A unit is:
+ *
+ * - LINE: a line of the text, as without a segmenter.
+ *
+ * - SENTENCE: a sentence of a line. A sentence ends with ".", "!" or "?"
+ * (and closing quotes or brackets), followed by white space and then the end
+ * of the line or a char which is not a lower case letter, so that "e.g. the"
+ * doesn't end a sentence. The sentences are cut before the line is cleaned,
+ * as the cleaning removes the punctuation.
+ *
+ * - PARAGRAPH: the lines of the text up to a blank line, the tokens of the
+ * lines one after the other.
+ *
+ * - WINDOW: tokensPerUnit tokens of a line, the last unit of the line being
+ * shorter.
+ *
+ * Units without any token are dropped, except lines in the LINE and WINDOW
+ * modes, as without a segmenter.
+ */
+public class UnitSegmenter {
+
+    public static final int LINE = 0;
+    public static final int SENTENCE = 1;
+    public static final int PARAGRAPH = 2;
+    public static final int WINDOW = 3;
+    private final TokenStore tokenStore;
+    private final int unit;
+    //true when a paragraph has been started in the TokenStore
+    private boolean inParagraph;
+
+    /**
+     * @param tokensPerUnit only used for the WINDOW unit
+     */
+    public UnitSegmenter(TokenStore tokenStore, int unit, int tokensPerUnit) {
+        this.tokenStore = tokenStore;
+        this.unit = unit;
+        if (unit == WINDOW) {
+            tokenStore.setMaxTokensPerLine(tokensPerUnit);
+        }
+    }
+
+    //a line of the text before cleaning, "" for a blank line (the end of a paragraph)
+    public void addLine(String line) throws IOException {
+        if (unit == SENTENCE) {
+            addSentences(line);
+        } else if (unit == PARAGRAPH) {
+            if (line.isEmpty()) {
+                endParagraph();
+            } else {
+                if (!inParagraph) {
+                    tokenStore.startLine();
+                    inParagraph = true;
+                }
+                tokenStore.addTokens(TextCleaner.doBasicCleaning(line));
+            }
+        } else if (!line.isEmpty()) {
+            tokenStore.addLine(TextCleaner.doBasicCleaning(line));
+        }
+    }
+
+    //ends the last unit, at the end of the text
+    public void close() {
+        endParagraph();
+    }
+
+    private void endParagraph() {
+        if (inParagraph) {
+            tokenStore.endLine();
+            inParagraph = false;
+        }
+    }
+
+    private void addSentences(String line) throws IOException {
+        int start = 0;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '.' || c == '!' || c == '?') {
+                int end = endOfSentence(line, i + 1);
+                if (end != -1) {
+                    addSentence(line.substring(start, end));
+                    start = end;
+                    i = end - 1;
+                }
+            }
+        }
+        if (start < length) {
+            addSentence(line.substring(start));
+        }
+    }
+
+    /**
+     * After a ".", "!" or "?" ending at i: the end of the sentence (after the
+     * closing quotes or brackets), or -1 if the sentence goes on.
+     */
+    private static int endOfSentence(String line, int i) {
+        int length = line.length();
+        while (i < length && isClosingChar(line.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return i;
+        }
+        if (!Character.isWhitespace(line.charAt(i))) {
+            return -1;
+        }
+        int next = i;
+        while (next < length && Character.isWhitespace(line.charAt(next))) {
+            next++;
+        }
+        return next == length || !Character.isLowerCase(line.charAt(next)) ? i : -1;
+    }
+
+    private static boolean isClosingChar(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == ']' || c == '”' || c == '’' || c == '»';
+    }
+
+    private void addSentence(String sentence) throws IOException {
+        tokenStore.startLine();
+        tokenStore.addTokens(TextCleaner.doBasicCleaning(sentence));
+        tokenStore.endLine();
+    }
+}